@@ -2,7 +2,6 @@ package entities;
 
 import java.util.Stack;
 
-import org.lwjgl.opengl.GL11;
 import org.newdawn.slick.opengl.Texture;
 
 import static entities.Agent.direction.*;
@@ -25,6 +24,8 @@ public abstract class Agent {
 	//for any action to be attributed to any agent.
 	Position pos = new Position(); //Position (x, y, z)
 	protected float[] offset = new float[2]; //Pixel offset from current position (x, y, z), truncated to the nearest pixel when rendering
+	private float[] tickScreenPos = new float[2]; //Screen position in game pixels at the start of the current tick
+	private boolean tickSaved = false;	//true once a tick start position has been recorded
 	Action currentAction;
 	Stack<Action> heldActionStack = new Stack<Action>(); //action that is put on hold until an interaction is completed
 	private boolean interruptRequested = false;
@@ -161,6 +162,17 @@ public abstract class Agent {
 		offset[1] += value;
 	}
 	
+	/**
+	 * Record where the agent is on screen at the start of a simulation tick, so frames rendered before the
+	 * next tick can be drawn part way between there and where the tick leaves it
+	 */
+	public void saveTickState()
+	{
+		tickScreenPos[0] = pos.x*16 + offset[0];
+		tickScreenPos[1] = (pos.y + pos.z)*16 + offset[1];
+		tickSaved = true;
+	}
+	
 	/**
 	 * Load any required textures for displaying
 	 */
@@ -173,104 +185,113 @@ public abstract class Agent {
 	{
 		offset[0] = 0;
 		offset[1] = 0;
+		tickSaved = false;
 	}
 	
 	/**
-	 * Render the agent using OpenGL, this is currently implemented with a default
+	 * Capture how the agent is drawn at the end of a tick, this is currently implemented with a default
 	 * rendering that assumes the texture has a left, middle, and right step.  This method
 	 * can be overridden if more specific or different rendering is required.
-	 * @param pixelSize how many screen pixels make up a "game" pixel
-	 * @param terrainTextureSize size of the terrain texture (i.e. dimensions of the world grid)
+	 * @return the agent's sprite, or null if nothing is drawn in the agent's cell
 	 */
-	public void renderAgent(int pixelSize, int terrainTextureSize)
+	public AgentView captureView()
 	{
 		if (!isRenderOnPlaceholder())
 		{
-			GL11.glPushMatrix();
-			
-				texture.bind();
-				GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+			int texX = getTexCol() * 3;
+			int texY = getTexRow();
+			switch (getDir())
+			{
+			case down:
+				texY += 0;
+				break;
+			case right:
+				texY += 1;
+				break;
+			case left:
+				texY += 2;
+				break;
+			case up:
+				texY += 3;				
+				break;
+			}
 			
-				float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
-				float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
-				
-				int texX = getTexCol() * 3;
-				int texY = getTexRow();
-				switch (getDir())
-				{
-				case down:
-					texY += 0;
-					break;
-				case right:
-					texY += 1;
-					break;
-				case left:
-					texY += 2;
-					break;
-				case up:
-					texY += 3;				
-					break;
-				}
-				
-				//Set footstep animation for jumping
-				if (this.isJumping())
+			//Set footstep animation for jumping
+			if (this.isJumping())
+			{
+				if (getStance() == right)
+					texX += 2;
+				else
+					texX += 0;
+			}
+			//Set footstep animation for regular stepping
+			else
+			{
+				if (getDir() == left || getDir() == right)
 				{
-					if (getStance() == right)
-						texX += 2;
+					if (Math.abs(offset[0]) <= 16 && Math.abs(offset[0]) > 7)
+					{
+						if (getFootstep() == right)
+							texX += 2;
+						else
+							texX += 0;
+					}
 					else
-						texX += 0;
+					{
+						texX += 1;
+					}
 				}
-				//Set footstep animation for regular stepping
 				else
 				{
-					if (getDir() == left || getDir() == right)
+					if (Math.abs(offset[1]) <= 16 && Math.abs(offset[1]) > 7)
 					{
-						if (Math.abs(offset[0]) <= 16 && Math.abs(offset[0]) > 7)
-						{
-							if (getFootstep() == right)
-								texX += 2;
-							else
-								texX += 0;
-						}
+						if (getFootstep() == right)
+							texX += 2;
 						else
-						{
-							texX += 1;
-						}
+							texX += 0;
 					}
 					else
 					{
-						if (Math.abs(offset[1]) <= 16 && Math.abs(offset[1]) > 7)
-						{
-							if (getFootstep() == right)
-								texX += 2;
-							else
-								texX += 0;
-						}
-						else
-						{
-							texX += 1;
-						}
+						texX += 1;
 					}
 				}
-				
-				int xMin = pixelSize * ((terrainTextureSize - TEXTURE_SIZE_X) / 2 + (int)(offset[0]));
-				int xMax = xMin + pixelSize * (TEXTURE_SIZE_X);
-				int yMin = pixelSize * ((int)(offset[1]));
-				int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
-				
-				GL11.glBegin(GL11.GL_QUADS);
-					GL11.glTexCoord2f(texX * tConvX, texY*tConvY + tConvY);
-					GL11.glVertex2f(xMin, yMin);
-					GL11.glTexCoord2f(texX*tConvX + tConvX, texY*tConvY + tConvY);
-					GL11.glVertex2f(xMax, yMin);
-					GL11.glTexCoord2f(texX*tConvX + tConvX, texY * tConvY);
-					GL11.glVertex2f(xMax, yMax);
-					GL11.glTexCoord2f(texX*tConvX, texY * tConvY);
-					GL11.glVertex2f(xMin, yMax);
-				GL11.glEnd();
-				
-			GL11.glPopMatrix();
+			}
+			
+			return createView(pos, pos, texX, texY, offset[0], offset[1]);
+		}
+		return null;
+	}
+	
+	/**
+	 * Create a view of a frame of this agent's sprite sheet, moving with the agent between ticks
+	 * @param cell cell the sprite is drawn in
+	 * @param lightCell cell whose light and shadow the sprite is drawn with
+	 * @param texX column of the frame in the sprite sheet
+	 * @param texY row of the frame in the sprite sheet
+	 * @param offsetX pixel offset from the cell
+	 * @param offsetY pixel offset from the cell
+	 * @return the view
+	 */
+	protected AgentView createView(Position cell, Position lightCell, int texX, int texY, float offsetX, float offsetY)
+	{
+		float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
+		float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
+		
+		//moves of more than half a tile in one tick (teleports, falls, placeholder swaps) are not smoothed
+		float shiftX = 0, shiftY = 0;
+		if (tickSaved)
+		{
+			shiftX = tickScreenPos[0] - (pos.x*16 + offset[0]);
+			shiftY = tickScreenPos[1] - ((pos.y + pos.z)*16 + offset[1]);
+			if (Math.abs(shiftX) > 8 || Math.abs(shiftY) > 8)
+			{
+				shiftX = 0;
+				shiftY = 0;
+			}
 		}
+		
+		return new AgentView(cell, lightCell, texture, texX*tConvX, texY*tConvY, texX*tConvX + tConvX, texY*tConvY + tConvY,
+				TEXTURE_SIZE_X, TEXTURE_SIZE_Y, offsetX, offsetY, shiftX, shiftY);
 	}
 
 	
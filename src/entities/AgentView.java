@@ -0,0 +1,109 @@
+package entities;
+
+import org.newdawn.slick.opengl.Texture;
+
+import utils.display.SpriteBatch;
+import world.Position;
+
+/**
+ * What an agent looks like at the end of a simulation tick: the cell it is drawn in, the frame of its sprite
+ * sheet, and its offset.  Views are captured on the simulation side and never change afterwards, so they can be
+ * drawn while the agent itself is being updated.
+ */
+public final class AgentView {
+	private final int x, y, z;	//cell the sprite is drawn in
+	private final int lightX, lightY, lightZ;	//cell whose light and shadow the sprite is drawn with
+	private final Texture texture;
+	private final float texXMin, texYMin, texXMax, texYMax;	//texture coordinates of the sprite frame
+	private final int width, height;	//sprite size in game pixels
+	private final float offsetX, offsetY;	//pixel offset from the cell at the end of the tick
+	private final float shiftX, shiftY;	//change in screen position back to where the agent was at the start of the tick
+	
+	/**
+	 * Constructor
+	 * @param cell cell the sprite is drawn in
+	 * @param lightCell cell whose light and shadow the sprite is drawn with
+	 * @param texture sprite sheet
+	 * @param texXMin left texture coordinate of the frame
+	 * @param texYMin top texture coordinate of the frame
+	 * @param texXMax right texture coordinate of the frame
+	 * @param texYMax bottom texture coordinate of the frame
+	 * @param width sprite width in game pixels
+	 * @param height sprite height in game pixels
+	 * @param offsetX pixel offset from the cell at the end of the tick
+	 * @param offsetY pixel offset from the cell at the end of the tick
+	 * @param shiftX change in screen position back to the start of the tick, 0 if the move isn't smoothed
+	 * @param shiftY change in screen position back to the start of the tick, 0 if the move isn't smoothed
+	 */
+	public AgentView(Position cell, Position lightCell, Texture texture, float texXMin, float texYMin, float texXMax, float texYMax,
+			int width, int height, float offsetX, float offsetY, float shiftX, float shiftY)
+	{
+		x = cell.x;
+		y = cell.y;
+		z = cell.z;
+		lightX = lightCell.x;
+		lightY = lightCell.y;
+		lightZ = lightCell.z;
+		this.texture = texture;
+		this.texXMin = texXMin;
+		this.texYMin = texYMin;
+		this.texXMax = texXMax;
+		this.texYMax = texYMax;
+		this.width = width;
+		this.height = height;
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+		this.shiftX = shiftX;
+		this.shiftY = shiftY;
+	}
+	
+	/**
+	 * Submit the sprite's quad to a sprite batch, relative to the batch's current offset
+	 * @param batch the sprite batch to submit to
+	 * @param alpha fraction of a tick elapsed since the view was captured, 1 draws the agent exactly where it is
+	 * @param pixelSize how many screen pixels make up a "game" pixel
+	 * @param terrainTextureSize size of the terrain texture (i.e. dimensions of the world grid)
+	 */
+	public void render(SpriteBatch batch, float alpha, int pixelSize, int terrainTextureSize)
+	{
+		int xMin = pixelSize * ((terrainTextureSize - width) / 2 + (int)(offsetX + shiftX*(1.0f - alpha)));
+		int xMax = xMin + pixelSize * (width);
+		int yMin = pixelSize * ((int)(offsetY + shiftY*(1.0f - alpha)));
+		int yMax = yMin + pixelSize * (height);
+		
+		batch.begin(texture);
+			batch.texCoord(texXMin, texYMax);
+			batch.vertex(xMin, yMin);
+			batch.texCoord(texXMax, texYMax);
+			batch.vertex(xMax, yMin);
+			batch.texCoord(texXMax, texYMin);
+			batch.vertex(xMax, yMax);
+			batch.texCoord(texXMin, texYMin);
+			batch.vertex(xMin, yMax);
+		batch.end();
+	}
+	
+	public int getX() {
+		return x;
+	}
+	
+	public int getY() {
+		return y;
+	}
+	
+	public int getZ() {
+		return z;
+	}
+	
+	public int getLightX() {
+		return lightX;
+	}
+	
+	public int getLightY() {
+		return lightY;
+	}
+	
+	public int getLightZ() {
+		return lightZ;
+	}
+}
@@ -2,8 +2,7 @@ package entities;
 
 import java.io.IOException;
 
-import org.newdawn.slick.opengl.TextureLoader;
-import org.newdawn.slick.util.ResourceLoader;
+import utils.display.TextureRegistry;
 
 import actions.Jump;
 import actions.Step;
@@ -58,7 +57,7 @@ public class Hero extends Agent {
 	public void loadTextures() 
 	{
 		try {
-			texture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream("graphics/characters/char1.png"));
+			texture = TextureRegistry.getTexture("graphics/characters/char1.png");
 		} catch (IOException e) {e.printStackTrace();}
 	}
 	
@@ -3,8 +3,7 @@ package entities;
 import java.io.IOException;
 import java.util.ArrayList;
 
-import org.newdawn.slick.opengl.TextureLoader;
-import org.newdawn.slick.util.ResourceLoader;
+import utils.display.TextureRegistry;
 
 import actions.Converse;
 import actions.FollowPath;
@@ -279,7 +278,7 @@ public class Innkeeper extends Agent
 	{
 		String texturePath = "graphics/characters/" + textureSheet + ".png";
 		try {
-			texture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream(texturePath));
+			texture = TextureRegistry.getTexture(texturePath);
 		} catch (IOException e) {e.printStackTrace();}
 	}
 
@@ -3,8 +3,6 @@ package entities;
 import static entities.Agent.direction.left;
 import static entities.Agent.direction.right;
 
-import org.lwjgl.opengl.GL11;
-
 import world.Position;
 import world.World;
 
@@ -38,7 +36,7 @@ public class Placeholder extends Agent {
 	}
 
 	@Override
-	public void renderAgent(int pixelSize, int terrainTextureSize)
+	public AgentView captureView()
 	{
 		if (agent.isRenderOnPlaceholder())
 		{
@@ -54,97 +52,73 @@ public class Placeholder extends Agent {
 			{
 				this.offset[1] -= 16;
 			}
-			//render the agent linked to this placeholder
-			GL11.glPushMatrix();
-			
-				agent.texture.bind();
-				GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+			//render the agent linked to this placeholder, lit where the agent is
+			int texX = agent.getTexCol() * 3;
+			int texY = agent.getTexRow();
+			switch (agent.getDir())
+			{
+			case down:
+				texY += 0;
+				break;
+			case right:
+				texY += 1;
+				break;
+			case left:
+				texY += 2;
+				break;
+			case up:
+				texY += 3;				
+				break;
+			}
 			
-				float tConvX = ((float)agent.TEXTURE_SIZE_X)/((float)agent.TEXTURE_SHEET_WIDTH);
-				float tConvY = ((float)agent.TEXTURE_SIZE_Y)/((float)agent.TEXTURE_SHEET_HEIGHT);
-				
-				int texX = agent.getTexCol() * 3;
-				int texY = agent.getTexRow();
-				switch (agent.getDir())
-				{
-				case down:
-					texY += 0;
-					break;
-				case right:
-					texY += 1;
-					break;
-				case left:
-					texY += 2;
-					break;
-				case up:
-					texY += 3;				
-					break;
-				}
-				
-				//Set footstep animation for jumping
-				if (agent.isJumping())
+			//Set footstep animation for jumping
+			if (agent.isJumping())
+			{
+				if (agent.getStance() == right)
+					texX += 2;
+				else
+					texX += 0;
+			}
+			//Set footstep animation for regular stepping
+			else
+			{
+				if (agent.getDir() == left || agent.getDir() == right)
 				{
-					if (agent.getStance() == right)
-						texX += 2;
+					if (Math.abs(agent.offset[0]) <= 16 && Math.abs(agent.offset[0]) > 7)
+					{
+						if (agent.getFootstep() == right)
+							texX += 2;
+						else
+							texX += 0;
+					}
 					else
-						texX += 0;
+					{
+						texX += 1;
+					}
 				}
-				//Set footstep animation for regular stepping
 				else
 				{
-					if (agent.getDir() == left || agent.getDir() == right)
+					if (Math.abs(agent.offset[1]) <= 16 && Math.abs(agent.offset[1]) > 7)
 					{
-						if (Math.abs(agent.offset[0]) <= 16 && Math.abs(agent.offset[0]) > 7)
-						{
-							if (agent.getFootstep() == right)
-								texX += 2;
-							else
-								texX += 0;
-						}
+						if (agent.getFootstep() == right)
+							texX += 2;
 						else
-						{
-							texX += 1;
-						}
+							texX += 0;
 					}
 					else
 					{
-						if (Math.abs(agent.offset[1]) <= 16 && Math.abs(agent.offset[1]) > 7)
-						{
-							if (agent.getFootstep() == right)
-								texX += 2;
-							else
-								texX += 0;
-						}
-						else
-						{
-							texX += 1;
-						}
+						texX += 1;
 					}
 				}
-				
-				int xMin = pixelSize * ((terrainTextureSize - agent.TEXTURE_SIZE_X) / 2 + (int)(this.offset[0]));
-				int xMax = xMin + pixelSize * (agent.TEXTURE_SIZE_X);
-				int yMin = pixelSize * ((int)(this.offset[1]));
-				int yMax = yMin + pixelSize * (agent.TEXTURE_SIZE_Y);
-				
-				GL11.glBegin(GL11.GL_QUADS);
-					GL11.glTexCoord2f(texX * tConvX, texY*tConvY + tConvY);
-					GL11.glVertex2f(xMin, yMin);
-					GL11.glTexCoord2f(texX*tConvX + tConvX, texY*tConvY + tConvY);
-					GL11.glVertex2f(xMax, yMin);
-					GL11.glTexCoord2f(texX*tConvX + tConvX, texY * tConvY);
-					GL11.glVertex2f(xMax, yMax);
-					GL11.glTexCoord2f(texX*tConvX, texY * tConvY);
-					GL11.glVertex2f(xMin, yMax);
-				GL11.glEnd();
-				
-			GL11.glPopMatrix();
+			}
+			
+			return agent.createView(pos, agent.pos, texX, texY, this.offset[0], this.offset[1]);
 		}
 		else
 		{
 			//otherwise render nothing, this is a placeholder to simply occupy a space while another agent is making
 			//a special case move to that space
-			
+			return null;
 		}
 	}
 	
@@ -30,6 +30,12 @@ import things.Rope;
 import things.Stairs;
 import things.Table;
 import things.WallCandle;
+import utils.display.AssetPreloader;
+import utils.display.NullRenderer;
+import utils.display.RecordingRenderer;
+import utils.display.Renderer;
+import utils.display.TextureRegistry;
+import world.LightEngine;
 import world.Position;
 import world.Terrain;
 import world.World;
@@ -44,110 +50,268 @@ import static things.Stairs.stairsType.*;
 
 public class GameMain {
 	
+	public static final int TICKS_PER_SECOND = 32;	//simulation rate, movement and animation speeds are per tick
+	public static final int MAX_TICKS_PER_FRAME = 5;	//ticks run before rendering again when falling behind
+	public static final int MAX_FRAMES_PER_SECOND = 60;	//render cap for when vsync is off or ignored by the driver
+	
 	World world;
 	
 	int arrowKeyInputCount = 0;
+	boolean profileNextFrame = false;	//record the next frame's draw calls and print their counts
 	
 	/**
 	 * Main game loop, this is where everything happens
 	 */
 	public void gameLoop()
 	{		
-		//Initialization
-		initGL();
-		initWorld();
-		loadTextures();
+		initGame();
 		
-		//Main game loop
+		//Main game loop, the world is updated at a fixed rate and rendered as often as the display allows
+		long tickNanos = 1000000000L / TICKS_PER_SECOND;
+		long accumulated = tickNanos;
+		long lastTime = System.nanoTime();
 		while(!Display.isCloseRequested())	//exits when window is closed
 		{
-			//update everything
-			world.updateThings();
-			world.updateAgents();
-			world.updateCameraScrollLock();
-			world.updateCamera();
+			long now = System.nanoTime();
+			accumulated += now - lastTime;
+			lastTime = now;
+			
+			//update everything once per tick elapsed, dropping the time if too far behind to catch up
+			int ticks = 0;
+			while (accumulated >= tickNanos && ticks < MAX_TICKS_PER_FRAME)
+			{
+				//get user input
+				pollKeyboardInput();
+				
+				tick();
+				accumulated -= tickNanos;
+				ticks ++;
+			}
+			if (ticks == MAX_TICKS_PER_FRAME)
+				accumulated = Math.min(accumulated, tickNanos - 1);
 			
-			//render everything
+			//render everything, part way to the next tick
+			world.setInterpolation((float)accumulated / tickNanos);
 			renderGL();
 			
-			//get user input
-			pollKeyboardInput();
+			//update the screen
+			Display.update();
+			Display.sync(MAX_FRAMES_PER_SECOND);
+		}
+		
+		//Exit
+		Display.destroy();
+	}
+	
+	/**
+	 * Game loop with the simulation on its own thread.  This thread only passes keyboard input along and renders
+	 * the latest tick the simulation has published, so a slow frame never holds up the world and a slow tick
+	 * never holds up drawing.
+	 */
+	public void threadedGameLoop()
+	{
+		initGame();
+		world.publishSnapshot();
+		world.setInterpolationClock(1000000000L / TICKS_PER_SECOND);
+		SimulationThread simulation = new SimulationThread(this);
+		simulation.start();
+		
+		//exits when window is closed, or when the simulation has stopped with an exception it already reported
+		while(!Display.isCloseRequested() && simulation.getFailure() == null)
+		{
+			//get user input, the simulation acts on it at its next tick
+			InputFrame input = InputFrame.capture();
+			handleDisplayInput(input);
+			simulation.addInput(input);
+			
+			//render the latest tick
+			renderGL();
 			
 			//update the screen
 			Display.update();
-			Display.sync(32);
+			Display.sync(MAX_FRAMES_PER_SECOND);
 		}
 		
 		//Exit
+		simulation.shutdown();
 		Display.destroy();
 	}
 	
 	/**
-	 * Poll for input on the keyboard
+	 * Initialization, sheets are decoded in the background while the world is built
+	 */
+	private void initGame()
+	{
+		AssetPreloader assets = new AssetPreloader("graphics");
+		TextureRegistry.setPreloader(assets);
+		assets.start();
+		initGL();
+		initWorld();
+		loadTextures();
+		System.out.println(assets.getReport());
+		TextureRegistry.setPreloader(null);
+	}
+	
+	/**
+	 * Game loop without a display, for soak tests and performance runs.  Everything is updated and rendered
+	 * as fast as possible, through a renderer that draws nothing.
+	 * 
+	 * @param frames number of frames to run
+	 */
+	public void headlessLoop(int frames)
+	{
+		//Initialization, no sheets are decoded without a display
+		TextureRegistry.setHeadless(true);
+		initWorld();
+		world.setRenderer(new NullRenderer());
+		loadTextures();
+		
+		long start = System.nanoTime();
+		for (int frame = 0; frame < frames; frame ++)
+		{
+			//update everything, one tick per frame
+			tick();
+			
+			//render everything, printing the draw call counts of the last frame
+			profileNextFrame = frame == frames - 1;
+			renderGL();
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println("Headless: " + frames + " frames in " + elapsed/1000000 + " ms, "
+				+ (frames == 0 ? 0 : elapsed/1000/frames) + " us per frame");
+	}
+	
+	/**
+	 * Advance the world by one simulation tick and publish the result for rendering
+	 */
+	public void tick()
+	{
+		world.beginTick();
+		world.updateThings();
+		world.updateAgents();
+		world.updateTextBox();
+		world.updateCameraScrollLock();
+		world.updateCamera();
+		world.publishSnapshot();
+	}
+	
+	/**
+	 * Poll for input on the keyboard and act on it, for when the simulation runs on the display's thread
 	 */
 	public void pollKeyboardInput()
+	{
+		InputFrame input = InputFrame.capture();
+		handleDisplayInput(input);
+		handleInput(input);
+	}
+	
+	/**
+	 * Act on keys that change how the game is drawn, on the thread owning the display
+	 * @param input the keyboard input
+	 */
+	public void handleDisplayInput(InputFrame input)
+	{
+		//Debugging stuff
+		for (int n = 0; n < input.getPressedCount(); n ++)
+		{
+			int key = input.getPressed(n);
+			if (key == Keyboard.KEY_L)
+			{
+				LightEngine lightEngine = world.getLightEngine();
+				System.out.println("Last light update (" + lightEngine.getMode() + "): " + lightEngine.getLastUpdateNanos()/1000 + " us");
+				if (lightEngine.getMode() == LightEngine.propagationMode.raycast)
+					lightEngine.setMode(LightEngine.propagationMode.floodFill);
+				else
+					lightEngine.setMode(LightEngine.propagationMode.raycast);
+			}
+			if (key == Keyboard.KEY_B)
+			{
+				LightEngine lightEngine = world.getLightEngine();
+				lightEngine.setBackground(!lightEngine.isBackground());
+				System.out.println("Background light solving: " + lightEngine.isBackground());
+			}
+			if (key == Keyboard.KEY_C)
+			{
+				world.setCachedRendering(!world.isCachedRendering());
+				System.out.println("Cached scene rendering: " + world.isCachedRendering());
+			}
+			if (key == Keyboard.KEY_O)
+			{
+				world.setOcclusionCulling(!world.isOcclusionCulling());
+				System.out.println("Occlusion culling: " + world.isOcclusionCulling());
+			}
+			if (key == Keyboard.KEY_P)
+			{
+				profileNextFrame = true;
+			}
+		}
+	}
+	
+	/**
+	 * Act on keys that change the world, on the thread running the simulation
+	 * @param input the keyboard input
+	 */
+	public void handleInput(InputFrame input)
 	{
 		//Check for key state changes
 		//(Pressed Action Keys)
-		while (Keyboard.next())
+		for (int n = 0; n < input.getPressedCount(); n ++)
 		{
-			if (Keyboard.getEventKeyState())
+			int key = input.getPressed(n);
+			//Debugging stuff
+			if (key == Keyboard.KEY_T)
 			{
-				//Debugging stuff
-				if (Keyboard.getEventKey() == Keyboard.KEY_T)
-				{
-					world.cycleTimeOfDay();
-				}
-				
-				switch (world.getCs())
+				world.cycleTimeOfDay();
+			}
+			
+			switch (world.getCs())
+			{
+			case walking:
+				//Pressed Action Keys
+				if (key == Keyboard.KEY_Z)
 				{
-				case walking:
-					//Pressed Action Keys
-					if (Keyboard.getEventKey() == Keyboard.KEY_Z)
+					Hero player = world.getPlayer();
+					if (player != null)
 					{
-						Hero player = world.getPlayer();
-						if (player != null)
+						direction d = player.getDir();
+						Position pos = player.getPos();
+						int x = pos.x;
+						int y = pos.y;
+						int z = pos.z;
+						switch (d)
 						{
-							direction d = player.getDir();
-							Position pos = player.getPos();
-							int x = pos.x;
-							int y = pos.y;
-							int z = pos.z;
-							switch (d)
-							{
-							case up: y++; break;
-							case down: y--; break;
-							case left: x--; break;
-							case right: x++; break;
-							}
-							if (world.getAgentAt(x, y, z) != null)
-								world.getAgentAt(x, y, z).interact(player, world);
-							else if (world.hasThing(x, y, z))
-								world.getThingsAt(x, y, z).interact(player, world);
-							else
+						case up: y++; break;
+						case down: y--; break;
+						case left: x--; break;
+						case right: x++; break;
+						}
+						if (world.getAgentAt(x, y, z) != null)
+							world.getAgentAt(x, y, z).interact(player, world);
+						else if (world.hasThing(x, y, z))
+							world.getThingsAt(x, y, z).interact(player, world);
+						else
+						{
+							if (player.isIdle())
 							{
-								if (player.isIdle())
-								{
-									player.setJumpAction(new Jump());
-									player.setCurrentAction(player.getJumpAction());
-								}
+								player.setJumpAction(new Jump());
+								player.setCurrentAction(player.getJumpAction());
 							}
 						}
 					}
-				break;
-				case talking:
-					if (Keyboard.getEventKey() == Keyboard.KEY_Z)
+				}
+			break;
+			case talking:
+				if (key == Keyboard.KEY_Z)
+				{
+					if (world.isTextBoxActive())
 					{
-						if (world.isTextBoxActive())
+						if (world.getTextDisplay().sendInput(Keyboard.KEY_Z))
 						{
-							if (world.getTextDisplay().sendInput(Keyboard.KEY_Z))
-							{
-								world.setTextBoxActive(false);
-							}
+							world.setTextBoxActive(false);
 						}
 					}
-				break;
 				}
+			break;
 			}
 		}
 		
@@ -155,7 +319,7 @@ public class GameMain {
 		switch (world.getCs())
 		{
 		case walking:
-			if (Keyboard.isKeyDown(Keyboard.KEY_X))
+			if (input.isKeyDown(Keyboard.KEY_X))
 			{
 				Hero player = world.getPlayer();
 				if (player != null && !player.isJumping())
@@ -175,7 +339,7 @@ public class GameMain {
 			}
 			
 			//Arrow Keys
-			if (Keyboard.isKeyDown(Keyboard.KEY_DOWN))
+			if (input.isKeyDown(Keyboard.KEY_DOWN))
 			{
 				Hero player = world.getPlayer();
 				if (player != null)
@@ -196,7 +360,7 @@ public class GameMain {
 					}
 				}
 			}
-			else if (Keyboard.isKeyDown(Keyboard.KEY_UP))
+			else if (input.isKeyDown(Keyboard.KEY_UP))
 			{
 				Hero player = world.getPlayer();
 				if (player != null)
@@ -217,7 +381,7 @@ public class GameMain {
 					}
 				}
 			}
-			else if (Keyboard.isKeyDown(Keyboard.KEY_RIGHT))
+			else if (input.isKeyDown(Keyboard.KEY_RIGHT))
 			{
 				Hero player = world.getPlayer();
 				if (player != null)
@@ -238,7 +402,7 @@ public class GameMain {
 					}
 				}
 			}
-			else if (Keyboard.isKeyDown(Keyboard.KEY_LEFT))
+			else if (input.isKeyDown(Keyboard.KEY_LEFT))
 			{
 				Hero player = world.getPlayer();
 				if (player != null)
@@ -265,7 +429,7 @@ public class GameMain {
 			}
 		break;
 		case talking:
-			if (Keyboard.isKeyDown(Keyboard.KEY_X))
+			if (input.isKeyDown(Keyboard.KEY_X))
 			{
 				if (world.isTextBoxActive())
 				{
@@ -294,6 +458,7 @@ public class GameMain {
 		try {
 			Display.setDisplayMode(new DisplayMode(800,600));
 			Display.create();
+			Display.setVSyncEnabled(true);	//frames are no longer capped by the update rate
 		} catch (LWJGLException e) {
 			e.printStackTrace();
 			System.exit(0);
@@ -333,32 +498,64 @@ public class GameMain {
 	public void loadTextures()
 	{
 		world.loadTextures();
+		System.out.println("Textures: " + TextureRegistry.getLoadCount() + " sheets loaded for " + TextureRegistry.getRequestCount()
+				+ " requests, " + TextureRegistry.getBytesUsed()/1024 + " KB");
 	}
 	
 	/**
-	 * Render any graphics (currently just the hero)
+	 * Render any graphics (currently just the hero), through the world's renderer.  A profiled frame is recorded
+	 * first, then drawn from the recording, and replayed into a second recording to check nothing was lost.
 	 */
 	public void renderGL()
 	{
-		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+		Renderer renderer = world.getRenderer();
+		RecordingRenderer recorder = null;
+		if (profileNextFrame)
+		{
+			recorder = new RecordingRenderer(renderer);
+			recorder.beginFrame();
+			world.setRenderer(recorder);
+		}
 		
-		GL11.glPushMatrix();
+		Renderer frameRenderer = world.getRenderer();
+		frameRenderer.clear();
+		
+		frameRenderer.pushMatrix();
 			world.renderWorld();
-		GL11.glPopMatrix();
-		GL11.glPushMatrix();
+		frameRenderer.popMatrix();
+		frameRenderer.pushMatrix();
 			world.renderOverlay();
-		GL11.glPopMatrix();
+		frameRenderer.popMatrix();
+		
+		if (recorder != null)
+		{
+			world.setRenderer(renderer);
+			recorder.replay(renderer);
+			System.out.println(recorder.getReport());
+			
+			RecordingRenderer check = new RecordingRenderer(renderer);
+			check.beginFrame();
+			recorder.replay(check);
+			if (!check.matches(recorder))
+				System.out.println("Replayed frame differs from its recording:" + String.format("%n") + check.getReport());
+			profileNextFrame = false;
+		}
 	}
 	
 	/**
 	 * Main class, simply constructs and runs the game
 	 * 
-	 * @param args the usual...
+	 * @param args the usual... or "-headless [frames]" to run without a display
 	 */
 	public static void main(String[] args)
 	{
 		GameMain gameMain = new GameMain();
-		gameMain.gameLoop();
+		if (args.length > 0 && args[0].equals("-headless"))
+			gameMain.headlessLoop(args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+		else if (args.length > 0 && args[0].equals("-threaded"))
+			gameMain.threadedGameLoop();
+		else
+			gameMain.gameLoop();
 	}
 	
 	
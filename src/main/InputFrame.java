@@ -0,0 +1,103 @@
+package main;
+
+import java.util.Arrays;
+
+import org.lwjgl.input.Keyboard;
+
+/**
+ * Keyboard input read on the thread owning the display, to be acted on by whichever thread runs the simulation:
+ * the keys pressed since the last frame, in order, and the keys held down.  Frames never change once captured.
+ */
+public final class InputFrame {
+	private static final InputFrame NONE = new InputFrame(new int[0], new boolean[Keyboard.KEYBOARD_SIZE]);
+	
+	private final int[] pressed;	//keys pressed, in order
+	private final boolean[] held;	//[key], true if the key is down
+	
+	private InputFrame(int[] pressed, boolean[] held)
+	{
+		this.pressed = pressed;
+		this.held = held;
+	}
+	
+	/**
+	 * Read the key presses since the last capture and the keys held now, must be called from the thread owning
+	 * the display
+	 * @return the input
+	 */
+	public static InputFrame capture()
+	{
+		int[] pressed = new int[4];
+		int count = 0;
+		while (Keyboard.next())
+		{
+			if (Keyboard.getEventKeyState())
+			{
+				if (count == pressed.length)
+					pressed = Arrays.copyOf(pressed, count * 2);
+				pressed[count ++] = Keyboard.getEventKey();
+			}
+		}
+		
+		boolean[] held = new boolean[Keyboard.KEYBOARD_SIZE];
+		for (int key = 0; key < held.length; key ++)
+		{
+			held[key] = Keyboard.isKeyDown(key);
+		}
+		return new InputFrame(Arrays.copyOf(pressed, count), held);
+	}
+	
+	/**
+	 * @return input with nothing pressed or held
+	 */
+	public static InputFrame none()
+	{
+		return NONE;
+	}
+	
+	/**
+	 * Combine this frame with a later one
+	 * @param later the later frame
+	 * @return the presses of both frames in order, with the keys held in the later one
+	 */
+	public InputFrame append(InputFrame later)
+	{
+		int[] combined = Arrays.copyOf(pressed, pressed.length + later.pressed.length);
+		System.arraycopy(later.pressed, 0, combined, pressed.length, later.pressed.length);
+		return new InputFrame(combined, later.held);
+	}
+	
+	/**
+	 * @return the keys held in this frame, with nothing pressed
+	 */
+	public InputFrame heldOnly()
+	{
+		return pressed.length == 0 ? this : new InputFrame(new int[0], held);
+	}
+	
+	/**
+	 * @return the number of keys pressed
+	 */
+	public int getPressedCount()
+	{
+		return pressed.length;
+	}
+	
+	/**
+	 * @param n index of the key press, in order
+	 * @return the key pressed
+	 */
+	public int getPressed(int n)
+	{
+		return pressed[n];
+	}
+	
+	/**
+	 * @param key the key
+	 * @return true if the key is held down
+	 */
+	public boolean isKeyDown(int key)
+	{
+		return held[key];
+	}
+}
@@ -0,0 +1,110 @@
+package main;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Runs the simulation on its own thread at a fixed rate, publishing a snapshot of the world after every tick
+ * for the display thread to render.  Keyboard input is passed over through a queue, so neither thread ever
+ * waits on the other.  An exception thrown by a tick stops the simulation and is kept for the display thread
+ * to report.
+ */
+public class SimulationThread extends Thread {
+	private GameMain game;
+	private volatile boolean running = true;
+	private ConcurrentLinkedQueue<InputFrame> inputQueue = new ConcurrentLinkedQueue<InputFrame>();
+	private InputFrame lastInput = InputFrame.none();	//input acted on last tick, keys stay held until a new frame comes in
+	private volatile Throwable failure;	//what stopped the simulation, null while it runs
+	
+	/**
+	 * Constructor
+	 * @param game the game whose world is simulated
+	 */
+	public SimulationThread(GameMain game)
+	{
+		super("Simulation");
+		this.game = game;
+		setDaemon(true);
+	}
+	
+	/**
+	 * Pass input captured on the display thread to be acted on at the next tick
+	 * @param input the input
+	 */
+	public void addInput(InputFrame input)
+	{
+		inputQueue.add(input);
+	}
+	
+	/**
+	 * Stop after the current tick and wait for the thread to finish
+	 */
+	public void shutdown()
+	{
+		running = false;
+		interrupt();
+		try {
+			join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * @return the exception or error that stopped the simulation, null if it hasn't failed
+	 */
+	public Throwable getFailure()
+	{
+		return failure;
+	}
+	
+	@Override
+	public void run()
+	{
+		long tickNanos = 1000000000L / GameMain.TICKS_PER_SECOND;
+		long nextTick = System.nanoTime();
+		try {
+			while (running)
+			{
+				game.handleInput(takeInput());
+				game.tick();
+				
+				nextTick += tickNanos;
+				long wait = nextTick - System.nanoTime();
+				if (wait > 0)
+				{
+					try {
+						Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+					} catch (InterruptedException e) {
+						//woken to shut down
+					}
+				}
+				else if (-wait > GameMain.MAX_TICKS_PER_FRAME * tickNanos)
+				{
+					//too far behind to catch up, drop the time
+					nextTick = System.nanoTime();
+				}
+			}
+		} catch (Throwable t) {
+			failure = t;
+			System.err.println("Simulation stopped after an uncaught exception:");
+			t.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Combine the input passed over since the last tick
+	 */
+	private InputFrame takeInput()
+	{
+		InputFrame input = null;
+		InputFrame frame;
+		while ((frame = inputQueue.poll()) != null)
+		{
+			input = input == null ? frame : input.append(frame);
+		}
+		if (input == null)
+			input = lastInput.heldOnly();
+		lastInput = input;
+		return input;
+	}
+}
@@ -2,9 +2,8 @@ package things;
 
 import java.io.IOException;
 
-import org.lwjgl.opengl.GL11;
-import org.newdawn.slick.opengl.TextureLoader;
-import org.newdawn.slick.util.ResourceLoader;
+import utils.display.SpriteBatch;
+import utils.display.TextureRegistry;
 
 import entities.Agent.direction;
 import static entities.Agent.direction.*;
@@ -95,48 +94,41 @@ public class Beam extends Thing {
 		else
 			sheet = "graphics/objects/thing1.png";
 		try {
-			texture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream(sheet));
+			texture = TextureRegistry.getTexture(sheet);
 		} catch (IOException e) {e.printStackTrace();}
 	}
 
 	@Override
-	public void renderThing(int pixelSize, int terrainTextureSize) {
-		GL11.glPushMatrix();
+	public void renderThing(SpriteBatch batch, int pixelSize, int terrainTextureSize) {
+		float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
+		float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
 		
-			texture.bind();
-			GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		int texX = texCol * 4;
+		int texY = texRow;
 		
-			float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
-			float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
-			
-			int texX = texCol * 4;
-			int texY = texRow;
-			
-			switch (connection)
-			{
-			case start: break;
-			case middle: texX += 1; break;
-			case end: texX += 2; break;
-			case standalone: texX += 3; break;
-			}
-			
-			int xMin = pixelSize * ((terrainTextureSize - TEXTURE_SIZE_X) / 2);
-			int xMax = xMin + pixelSize * (TEXTURE_SIZE_X);
-			int yMin = 0;
-			int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
-			
-			GL11.glBegin(GL11.GL_QUADS);
-				GL11.glTexCoord2f(texX * tConvX, texY*tConvY + tConvY);
-				GL11.glVertex2f(xMin, yMin);
-				GL11.glTexCoord2f(texX*tConvX + tConvX, texY*tConvY + tConvY);
-				GL11.glVertex2f(xMax, yMin);
-				GL11.glTexCoord2f(texX*tConvX + tConvX, texY * tConvY);
-				GL11.glVertex2f(xMax, yMax);
-				GL11.glTexCoord2f(texX*tConvX, texY * tConvY);
-				GL11.glVertex2f(xMin, yMax);
-			GL11.glEnd();
-			
-		GL11.glPopMatrix();
+		switch (connection)
+		{
+		case start: break;
+		case middle: texX += 1; break;
+		case end: texX += 2; break;
+		case standalone: texX += 3; break;
+		}
+		
+		int xMin = pixelSize * ((terrainTextureSize - TEXTURE_SIZE_X) / 2);
+		int xMax = xMin + pixelSize * (TEXTURE_SIZE_X);
+		int yMin = 0;
+		int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
+		
+		batch.begin(texture);
+			batch.texCoord(texX * tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMin, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMax, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY * tConvY);
+			batch.vertex(xMax, yMax);
+			batch.texCoord(texX*tConvX, texY * tConvY);
+			batch.vertex(xMin, yMax);
+		batch.end();
 	}
 
 	public static class BeamBuilder
@@ -3,9 +3,8 @@ package things;
 import java.io.IOException;
 import java.util.Random;
 
-import org.lwjgl.opengl.GL11;
-import org.newdawn.slick.opengl.TextureLoader;
-import org.newdawn.slick.util.ResourceLoader;
+import utils.display.SpriteBatch;
+import utils.display.TextureRegistry;
 
 public class Candle extends Thing {
 
@@ -69,54 +68,66 @@ public class Candle extends Thing {
 	public void loadTextures() 
 	{
 		try {
-			texture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream("graphics/objects/thing2.png"));
+			texture = TextureRegistry.getTexture("graphics/objects/thing2.png");
 		} catch (IOException e) {e.printStackTrace();}
 	}
 
 	@Override
-	public void renderThing(int pixelSize, int terrainTextureSize) 
+	public void renderThing(SpriteBatch batch, int pixelSize, int terrainTextureSize) 
 	{
-		GL11.glPushMatrix();
+		renderThing(batch, getFrame(), pixelSize, terrainTextureSize);
+	}
+	
+	@Override
+	public void renderThing(SpriteBatch batch, int frame, int pixelSize, int terrainTextureSize) 
+	{
+		float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
+		float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
 		
-			texture.bind();
-			GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		int texX = texCol * 4 + frame;
+		int texY = texRow;
 		
-			float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
-			float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
-			
-			int texX = texCol * 4;
-			int texY = texRow;
-			if (lit)
-			{
-				if (animationFrame < 5)
-					texX += 1;
-				else if (animationFrame < 10)
-					texX += 2;
-				else if (animationFrame < 15)
-					texX += 3;
-				else if (animationFrame < 20)
-					texX += 2;
-			}
-			
-			int xMin = pixelSize * ((terrainTextureSize - TEXTURE_SIZE_X) / 2);
-			int xMax = xMin + pixelSize * (TEXTURE_SIZE_X);
-			int yMin = 0;
-			int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
-			
-			GL11.glBegin(GL11.GL_QUADS);
-				GL11.glTexCoord2f(texX * tConvX, texY*tConvY + tConvY);
-				GL11.glVertex2f(xMin, yMin);
-				GL11.glTexCoord2f(texX*tConvX + tConvX, texY*tConvY + tConvY);
-				GL11.glVertex2f(xMax, yMin);
-				GL11.glTexCoord2f(texX*tConvX + tConvX, texY * tConvY);
-				GL11.glVertex2f(xMax, yMax);
-				GL11.glTexCoord2f(texX*tConvX, texY * tConvY);
-				GL11.glVertex2f(xMin, yMax);
-			GL11.glEnd();
-			
-		GL11.glPopMatrix();
+		int xMin = pixelSize * ((terrainTextureSize - TEXTURE_SIZE_X) / 2);
+		int xMax = xMin + pixelSize * (TEXTURE_SIZE_X);
+		int yMin = 0;
+		int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
+		
+		batch.begin(texture);
+			batch.texCoord(texX * tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMin, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMax, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY * tConvY);
+			batch.vertex(xMax, yMax);
+			batch.texCoord(texX*tConvX, texY * tConvY);
+			batch.vertex(xMin, yMax);
+		batch.end();
 	}
 
+	@Override
+	public int getFrame()
+	{
+		//column of the flame in the sprite sheet, after the unlit candle
+		if (lit)
+		{
+			if (animationFrame < 5)
+				return 1;
+			else if (animationFrame < 10)
+				return 2;
+			else if (animationFrame < 15)
+				return 3;
+			else if (animationFrame < 20)
+				return 2;
+		}
+		return 0;
+	}
+	
+	@Override
+	public boolean isAnimated()
+	{
+		return lit;
+	}
+	
 	@Override
 	public void update()
 	{
@@ -2,9 +2,8 @@ package things;
 
 import java.io.IOException;
 
-import org.lwjgl.opengl.GL11;
-import org.newdawn.slick.opengl.TextureLoader;
-import org.newdawn.slick.util.ResourceLoader;
+import utils.display.SpriteBatch;
+import utils.display.TextureRegistry;
 
 import world.World;
 
@@ -70,68 +69,61 @@ public class Chair extends Thing {
 	public void loadTextures() {
 		try {
 			//chairs of all types currently use the same texture sheet, add a conditional if this changes in the future
-			texture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream("graphics/objects/thing2.png"));
+			texture = TextureRegistry.getTexture("graphics/objects/thing2.png");
 		} catch (IOException e) {e.printStackTrace();}
 	}
 
-	public void renderThing(int pixelSize, int terrainTextureSize) {
-		GL11.glPushMatrix();
+	public void renderThing(SpriteBatch batch, int pixelSize, int terrainTextureSize) {
+		float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
+		float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
 		
-			texture.bind();
-			GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		int texX = texCol * 4;
+		int texY = texRow;
+		switch (getDir())
+		{
+		case up:
+			if (pushedIn)
+				texX += 1;
+			else
+				texX += 0;
+			break;
+		case down:
+			if (pushedIn)
+				texX += 3;
+			else
+				texX += 2;
+			break;
+		case right:
+			texY += 1;
+			if (pushedIn)
+				texX += 1;
+			else
+				texX += 0;
+			break;
+		case left:
+			texY += 1;
+			if (pushedIn)
+				texX += 3;
+			else
+				texX += 2;
+			break;
+		}
 		
-			float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
-			float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
-			
-			int texX = texCol * 4;
-			int texY = texRow;
-			switch (getDir())
-			{
-			case up:
-				if (pushedIn)
-					texX += 1;
-				else
-					texX += 0;
-				break;
-			case down:
-				if (pushedIn)
-					texX += 3;
-				else
-					texX += 2;
-				break;
-			case right:
-				texY += 1;
-				if (pushedIn)
-					texX += 1;
-				else
-					texX += 0;
-				break;
-			case left:
-				texY += 1;
-				if (pushedIn)
-					texX += 3;
-				else
-					texX += 2;
-				break;
-			}
-			
-			int xMin = pixelSize * ((terrainTextureSize - TEXTURE_SIZE_X) / 2);
-			int xMax = xMin + pixelSize * (TEXTURE_SIZE_X);
-			int yMin = 0;
-			int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
-			
-			GL11.glBegin(GL11.GL_QUADS);
-				GL11.glTexCoord2f(texX * tConvX, texY*tConvY + tConvY);
-				GL11.glVertex2f(xMin, yMin);
-				GL11.glTexCoord2f(texX*tConvX + tConvX, texY*tConvY + tConvY);
-				GL11.glVertex2f(xMax, yMin);
-				GL11.glTexCoord2f(texX*tConvX + tConvX, texY * tConvY);
-				GL11.glVertex2f(xMax, yMax);
-				GL11.glTexCoord2f(texX*tConvX, texY * tConvY);
-				GL11.glVertex2f(xMin, yMax);
-			GL11.glEnd();
-			
-		GL11.glPopMatrix();
+		int xMin = pixelSize * ((terrainTextureSize - TEXTURE_SIZE_X) / 2);
+		int xMax = xMin + pixelSize * (TEXTURE_SIZE_X);
+		int yMin = 0;
+		int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
+		
+		batch.begin(texture);
+			batch.texCoord(texX * tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMin, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMax, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY * tConvY);
+			batch.vertex(xMax, yMax);
+			batch.texCoord(texX*tConvX, texY * tConvY);
+			batch.vertex(xMin, yMax);
+		batch.end();
 	}
 
 	public static class ChairBuilder
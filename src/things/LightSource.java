@@ -2,6 +2,8 @@ package things;
 
 import java.util.Random;
 
+import utils.display.SpriteBatch;
+
 public class LightSource extends Thing {
 
 	float baseLightPower;
@@ -31,7 +33,7 @@ public class LightSource extends Thing {
 	}
 
 	@Override
-	public void renderThing(int pixelSize, int terrainTextureSize) 
+	public void renderThing(SpriteBatch batch, int pixelSize, int terrainTextureSize) 
 	{
 		//nothing to render
 	}
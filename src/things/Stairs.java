@@ -2,9 +2,8 @@ package things;
 
 import java.io.IOException;
 
-import org.lwjgl.opengl.GL11;
-import org.newdawn.slick.opengl.TextureLoader;
-import org.newdawn.slick.util.ResourceLoader;
+import utils.display.SpriteBatch;
+import utils.display.TextureRegistry;
 
 import entities.Agent.direction;
 import static entities.Agent.direction.*;
@@ -58,19 +57,14 @@ public class Stairs extends Ramp {
 	{
 		try {
 			//stairs of all types currently use the same texture sheet, add a conditional if this changes in the future
-			texture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream("graphics/objects/thing1.png"));
+			texture = TextureRegistry.getTexture("graphics/objects/thing1.png");
 		} catch (IOException e) {e.printStackTrace();}
 	}
 
 	@SuppressWarnings("incomplete-switch")
 	@Override
-	public void renderThing(int pixelSize, int terrainTextureSize)
+	public void renderThing(SpriteBatch batch, int pixelSize, int terrainTextureSize)
 	{
-		GL11.glPushMatrix();
-		
-		texture.bind();
-		GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-	
 		float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
 		float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
 		
@@ -131,18 +125,16 @@ public class Stairs extends Ramp {
 		int yMin = 0;
 		int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
 		
-		GL11.glBegin(GL11.GL_QUADS);
-			GL11.glTexCoord2f(texX * tConvX, texY*tConvY + tConvY);
-			GL11.glVertex2f(xMin, yMin);
-			GL11.glTexCoord2f(texX*tConvX + tConvX, texY*tConvY + tConvY);
-			GL11.glVertex2f(xMax, yMin);
-			GL11.glTexCoord2f(texX*tConvX + tConvX, texY * tConvY);
-			GL11.glVertex2f(xMax, yMax);
-			GL11.glTexCoord2f(texX*tConvX, texY * tConvY);
-			GL11.glVertex2f(xMin, yMax);
-		GL11.glEnd();
-		
-	GL11.glPopMatrix();
+		batch.begin(texture);
+			batch.texCoord(texX * tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMin, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMax, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY * tConvY);
+			batch.vertex(xMax, yMax);
+			batch.texCoord(texX*tConvX, texY * tConvY);
+			batch.vertex(xMin, yMax);
+		batch.end();
 	}
 	
 	@Override
@@ -2,9 +2,8 @@ package things;
 
 import java.io.IOException;
 
-import org.lwjgl.opengl.GL11;
-import org.newdawn.slick.opengl.TextureLoader;
-import org.newdawn.slick.util.ResourceLoader;
+import utils.display.SpriteBatch;
+import utils.display.TextureRegistry;
 
 import entities.Agent.direction;
 
@@ -40,18 +39,13 @@ public class StairsBottom extends Thing {
 	public void loadTextures()
 	{
 		try {
-			texture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream("graphics/objects/thing1.png"));
+			texture = TextureRegistry.getTexture("graphics/objects/thing1.png");
 		} catch (IOException e) {e.printStackTrace();}
 	}
 
 	@Override
-	public void renderThing(int pixelSize, int terrainTextureSize)
+	public void renderThing(SpriteBatch batch, int pixelSize, int terrainTextureSize)
 	{
-		GL11.glPushMatrix();
-		
-		texture.bind();
-		GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-	
 		float tConvX = ((float)TEXTURE_SIZE_X)/((float)TEXTURE_SHEET_WIDTH);
 		float tConvY = ((float)TEXTURE_SIZE_Y)/((float)TEXTURE_SHEET_HEIGHT);
 		
@@ -66,17 +60,15 @@ public class StairsBottom extends Thing {
 		int yMin = 0;
 		int yMax = yMin + pixelSize * (TEXTURE_SIZE_Y);
 		
-		GL11.glBegin(GL11.GL_QUADS);
-			GL11.glTexCoord2f(texX * tConvX, texY*tConvY + tConvY);
-			GL11.glVertex2f(xMin, yMin);
-			GL11.glTexCoord2f(texX*tConvX + tConvX, texY*tConvY + tConvY);
-			GL11.glVertex2f(xMax, yMin);
-			GL11.glTexCoord2f(texX*tConvX + tConvX, texY * tConvY);
-			GL11.glVertex2f(xMax, yMax);
-			GL11.glTexCoord2f(texX*tConvX, texY * tConvY);
-			GL11.glVertex2f(xMin, yMax);
-		GL11.glEnd();
-		
-	GL11.glPopMatrix();
+		batch.begin(texture);
+			batch.texCoord(texX * tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMin, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY*tConvY + tConvY);
+			batch.vertex(xMax, yMin);
+			batch.texCoord(texX*tConvX + tConvX, texY * tConvY);
+			batch.vertex(xMax, yMax);
+			batch.texCoord(texX*tConvX, texY * tConvY);
+			batch.vertex(xMin, yMax);
+		batch.end();
 	}
 }
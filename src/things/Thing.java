@@ -2,6 +2,8 @@ package things;
 
 import org.newdawn.slick.opengl.Texture;
 
+import utils.display.SpriteBatch;
+
 import world.Position;
 import world.World;
 import entities.Agent;
@@ -52,17 +54,51 @@ public abstract class Thing {
 	public abstract void loadTextures();
 	
 	/**
-	 * Render the Thing with OpenGL
+	 * Render the Thing by submitting its quads to a sprite batch, relative to the batch's current offset
+	 * @param batch the sprite batch to submit to
 	 * @param pixelSize the ratio of real screen pixels to in game pixels
 	 * @param terrainTextureSize the pixel dimensions of a terrain tile
 	 */
-	public abstract void renderThing(int pixelSize, int terrainTextureSize);
+	public abstract void renderThing(SpriteBatch batch, int pixelSize, int terrainTextureSize);
+	
+	/**
+	 * Render the Thing as it looked in a given animation frame, for drawing from a snapshot while the thing itself
+	 * is being updated.  Things that look the same every frame can ignore the frame, which is the default.
+	 * @param batch the sprite batch to submit to
+	 * @param frame the animation frame, as returned by getFrame()
+	 * @param pixelSize the ratio of real screen pixels to in game pixels
+	 * @param terrainTextureSize the pixel dimensions of a terrain tile
+	 */
+	public void renderThing(SpriteBatch batch, int frame, int pixelSize, int terrainTextureSize)
+	{
+		renderThing(batch, pixelSize, terrainTextureSize);
+	}
+	
+	/**
+	 * The current animation frame, packing whatever state changes how the thing is drawn into one value.
+	 * 0 by default, override along with the frame taking version of renderThing for things animated in update().
+	 * @return the animation frame
+	 */
+	public int getFrame()
+	{
+		return 0;
+	}
 	
 	/**
 	 * Time update for a thing, empty by default but can be overridden.
 	 */
 	public void update(){}
 	
+	/**
+	 * Whether the thing can look different from one frame to the next without moving, such as a flickering flame.
+	 * False by default, override for things animated in update().
+	 * @return true if the thing has to be redrawn every frame
+	 */
+	public boolean isAnimated()
+	{
+		return false;
+	}
+	
 	/**
 	 * Action taken when the thing is interacted with; empty by default but can be overridden.
 	 * @param agent the agent interacting with the thing
@@ -125,6 +161,12 @@ public abstract class Thing {
 	{
 		if (pos.z - 1 < 0)
 			return true;
+		//nothing blocking in the column at or below the cell underneath
+		int top = world.getHeightMap().getTopBlocking(pos.x, pos.y);
+		if (top < pos.z - 1)
+			return false;
+		if (top == pos.z - 1)
+			return true;
 		if ((world.getTerrainAt(pos.x, pos.y, pos.z - 1) != null && world.getTerrainAt(pos.x, pos.y, pos.z - 1).isBlocking())
 				|| (world.getThingsAt(pos.x, pos.y, pos.z - 1) != null && world.getThingsAt(pos.x, pos.y, pos.z - 1).isBlocking())
 				|| world.getAgentAt(pos.x, pos.y, pos.z - 1) != null)
@@ -260,6 +302,15 @@ public abstract class Thing {
 	{
 		return climbingSurface;
 	}
+	
+	/**
+	 * Determine if the thing is at rest, i.e. has no velocity in any direction
+	 * @return true if stationary
+	 */
+	public boolean isStationary()
+	{
+		return velocity[0] == 0 && velocity[1] == 0 && velocity[2] == 0;
+	}
 
 	public void setPos(Position pos) {
 		this.pos = new Position(pos);
@@ -3,12 +3,18 @@ package things;
 import java.util.ArrayList;
 
 import things.Thing.connectionContext;
+import utils.display.SpriteBatch;
 import world.World;
+import world.WorldSnapshot;
 import entities.Agent;
 import entities.Agent.direction;
 
+/**
+ * The things in one grid cell.  The list is copied on every change rather than changed in place, so the renderer
+ * can walk a cell while the simulation adds and removes things; methods used while rendering read the list once.
+ */
 public class ThingGridCell {
-	private ArrayList<Thing> thingList;
+	private volatile ArrayList<Thing> thingList;
 	
 	public ThingGridCell()
 	{
@@ -54,9 +60,9 @@ public class ThingGridCell {
 	
 	public boolean hasFullBlock()
 	{
-		for (int i = 0; i < thingList.size(); i ++)
+		for (Thing t : thingList)
 		{
-			if (thingList.get(i).fullBlock)
+			if (t.fullBlock)
 				return true;
 		}
 		return false;
@@ -64,9 +70,9 @@ public class ThingGridCell {
 	
 	public boolean hasTallBlock()
 	{
-		for (int i = 0; i < thingList.size(); i ++)
+		for (Thing t : thingList)
 		{
-			if (thingList.get(i).tallBlock)
+			if (t.tallBlock)
 				return true;
 		}
 		return false;
@@ -75,12 +81,12 @@ public class ThingGridCell {
 	public int getBlockingWidth()
 	{
 		int maxWidth = 0;
-		for (int i = 0; i < thingList.size(); i ++)
+		for (Thing t : thingList)
 		{
-			if (thingList.get(i).fullBlock)
+			if (t.fullBlock)
 			{
-				if (thingList.get(i).blockingWidth > maxWidth)
-					maxWidth = thingList.get(i).blockingWidth;
+				if (t.blockingWidth > maxWidth)
+					maxWidth = t.blockingWidth;
 			}
 		}
 		return maxWidth;
@@ -126,11 +132,18 @@ public class ThingGridCell {
 		return true;
 	}
 	
-	public void renderThings(int pixelSize, int terrainTextureSize)
+	/**
+	 * Render the things in this cell as they were when a snapshot was taken
+	 * @param batch the sprite batch to submit to
+	 * @param snapshot the snapshot holding the things' animation frames
+	 * @param pixelSize the ratio of real screen pixels to in game pixels
+	 * @param terrainTextureSize the pixel dimensions of a terrain tile
+	 */
+	public void renderThings(SpriteBatch batch, WorldSnapshot snapshot, int pixelSize, int terrainTextureSize)
 	{
-		for (int i = 0; i < thingList.size(); i ++)
+		for (Thing t : thingList)
 		{
-			thingList.get(i).renderThing(pixelSize, terrainTextureSize);
+			t.renderThing(batch, snapshot.getFrame(t), pixelSize, terrainTextureSize);
 		}
 	}
 	
@@ -148,7 +161,9 @@ public class ThingGridCell {
 	 */
 	public void addThing(Thing t)
 	{
-		thingList.add(t);
+		ArrayList<Thing> newList = new ArrayList<Thing>(thingList);
+		newList.add(t);
+		thingList = newList;
 	}
 	
 	/**
@@ -157,11 +172,13 @@ public class ThingGridCell {
 	 */
 	public void removeThing(Thing t)
 	{
-		thingList.remove(t);
+		ArrayList<Thing> newList = new ArrayList<Thing>(thingList);
+		newList.remove(t);
+		thingList = newList;
 	}
 	
 	/**
-	 * Getter for the thing list
+	 * Getter for the thing list, which must not be changed; use addThing and removeThing
 	 * @return the list of things in this cell
 	 */
 	public ArrayList<Thing> getThings()
@@ -0,0 +1,163 @@
+package utils.display;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of decoded images, so PNGs only have to be inflated the first time they're loaded after they
+ * change.  Each image is stored under CACHE_DIRECTORY as a small header followed by its padded RGBA pixels, and
+ * is loaded by memory mapping the file, which gives a direct buffer that can be uploaded as is.  An entry is
+ * stale when its source's modification time or length no longer match the ones recorded in its header.
+ */
+public class AssetCache
+{
+	public static final String CACHE_DIRECTORY = ".assetcache";
+	
+	private static final int MAGIC = 0x47485241;	//"GHRA"
+	private static final int VERSION = 1;
+	
+	//magic, version, source modified time and length, width, height, texture width and height, alpha
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 * 5;
+	
+	private static AtomicInteger hits = new AtomicInteger();
+	private static AtomicInteger misses = new AtomicInteger();
+	
+	/**
+	 * Load an image from the cache, decoding it and refreshing its entry if the entry is missing or stale.
+	 * Images that aren't plain files (such as resources on the classpath) are decoded without caching.
+	 * 
+	 * @param path resource path of the image
+	 * @return the decoded image
+	 * @throws IOException if the image can't be decoded
+	 */
+	public static DecodedImage load(String path) throws IOException
+	{
+		File source = new File(path);
+		if (!source.isFile())
+			return DecodedImage.decode(path);
+		
+		//read these before decoding, so a source that changes while being decoded leaves a stale entry behind
+		long modified = source.lastModified();
+		long length = source.length();
+		
+		File entry = new File(CACHE_DIRECTORY, path + ".rgba");
+		DecodedImage image = read(entry, modified, length);
+		if (image != null)
+		{
+			hits.incrementAndGet();
+			return image;
+		}
+		
+		misses.incrementAndGet();
+		image = DecodedImage.decode(path);
+		try {
+			write(entry, modified, length, image);
+		} catch (IOException e) {
+			System.err.println("Couldn't cache " + path + ": " + e);
+		}
+		return image;
+	}
+	
+	/**
+	 * Map a cache entry
+	 * @return the cached image, null if the entry is missing, stale, or malformed
+	 */
+	private static DecodedImage read(File entry, long modified, long length) throws IOException
+	{
+		if (!entry.isFile() || entry.length() < HEADER_SIZE)
+			return null;
+		
+		RandomAccessFile file = new RandomAccessFile(entry, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining())
+			{
+				if (channel.read(header) < 0)
+					return null;
+			}
+			header.flip();
+			
+			if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != modified || header.getLong() != length)
+				return null;
+			int width = header.getInt();
+			int height = header.getInt();
+			int textureWidth = header.getInt();
+			int textureHeight = header.getInt();
+			boolean alpha = header.getInt() != 0;
+			
+			long pixelBytes = (long)textureWidth * textureHeight * 4;
+			if (channel.size() != HEADER_SIZE + pixelBytes)
+				return null;
+			
+			//the mapping stays valid after the file is closed
+			ByteBuffer pixels = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, pixelBytes);
+			return new DecodedImage(width, height, textureWidth, textureHeight, alpha, pixels);
+		} finally {
+			file.close();
+		}
+	}
+	
+	/**
+	 * Write a cache entry, replacing any existing one.  The entry is written to a temporary file first so a
+	 * partially written entry is never read.
+	 */
+	private static void write(File entry, long modified, long length, DecodedImage image) throws IOException
+	{
+		File directory = entry.getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Couldn't create " + directory);
+		
+		File temp = File.createTempFile(entry.getName(), ".tmp", directory);
+		RandomAccessFile file = new RandomAccessFile(temp, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putLong(modified).putLong(length);
+			header.putInt(image.getWidth()).putInt(image.getHeight());
+			header.putInt(image.getTextureWidth()).putInt(image.getTextureHeight());
+			header.putInt(image.hasAlpha() ? 1 : 0);
+			header.flip();
+			
+			ByteBuffer pixels = image.getPixels().duplicate();
+			pixels.clear();
+			while (header.hasRemaining())
+			{
+				channel.write(header);
+			}
+			while (pixels.hasRemaining())
+			{
+				channel.write(pixels);
+			}
+		} finally {
+			file.close();
+		}
+		
+		entry.delete();
+		if (!temp.renameTo(entry))
+		{
+			temp.delete();
+			throw new IOException("Couldn't replace " + entry);
+		}
+	}
+	
+	/**
+	 * @return the number of images loaded from the cache
+	 */
+	public static int getHits()
+	{
+		return hits.get();
+	}
+	
+	/**
+	 * @return the number of images that had to be decoded because their entry was missing or stale
+	 */
+	public static int getMisses()
+	{
+		return misses.get();
+	}
+}
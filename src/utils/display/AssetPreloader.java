@@ -0,0 +1,126 @@
+package utils.display;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes every image under an asset directory on worker threads, so PNG decoding (or reading from the asset
+ * cache) overlaps GL setup and world generation instead of happening one sheet at a time on the GL thread.
+ * TextureRegistry takes the decoded pixels when a texture is first requested, waiting only if that sheet is
+ * still being decoded, and uploads them itself since that has to happen on the GL thread.
+ */
+public class AssetPreloader
+{
+	private String root;
+	private ExecutorService pool;
+	private HashMap<String, Future<DecodedImage>> images = new HashMap<String, Future<DecodedImage>>();
+	
+	//timing for the startup report
+	private AtomicLong decodeNanos = new AtomicLong();	//total time spent decoding, summed over workers
+	private long waitNanos = 0;	//time callers spent waiting for images that weren't decoded yet
+	private long startTime;
+	
+	/**
+	 * Constructor
+	 * @param root directory of the assets, which is also the prefix of their resource paths
+	 */
+	public AssetPreloader(String root)
+	{
+		this.root = root;
+	}
+	
+	/**
+	 * Find every image under the root directory and start decoding them in the background
+	 */
+	public synchronized void start()
+	{
+		startTime = System.nanoTime();
+		pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "asset-decoder");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		submitDirectory(new File(root), root);
+		pool.shutdown();
+	}
+	
+	private void submitDirectory(File directory, String path)
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		
+		for (File file : files)
+		{
+			final String filePath = path + "/" + file.getName();
+			if (file.isDirectory())
+			{
+				submitDirectory(file, filePath);
+			}
+			else if (file.getName().toLowerCase().endsWith(".png"))
+			{
+				images.put(filePath, pool.submit(new Callable<DecodedImage>() {
+					public DecodedImage call() throws Exception
+					{
+						long start = System.nanoTime();
+						try {
+							return AssetCache.load(filePath);
+						} finally {
+							decodeNanos.addAndGet(System.nanoTime() - start);
+						}
+					}
+				}));
+			}
+		}
+	}
+	
+	/**
+	 * Get the decoded pixels of an image, waiting for it if it is still being decoded.  Each image can only be
+	 * taken once, so its pixels can be released once they are uploaded.
+	 * 
+	 * @param path resource path of the image
+	 * @return the decoded image, null if it wasn't preloaded or failed to decode
+	 */
+	public synchronized DecodedImage take(String path)
+	{
+		Future<DecodedImage> image = images.remove(path);
+		if (image == null)
+			return null;
+		
+		long start = System.nanoTime();
+		try {
+			return image.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			System.err.println("Preloading " + path + " failed: " + e.getCause());
+			return null;
+		} finally {
+			waitNanos += System.nanoTime() - start;
+		}
+	}
+	
+	/**
+	 * Get a summary of how much decoding time was taken off the caller's thread
+	 */
+	public synchronized String getReport()
+	{
+		long decodeMillis = decodeNanos.get() / 1000000;
+		long waitMillis = waitNanos / 1000000;
+		return "Decoded assets in " + decodeMillis + " ms of worker time, waited " + waitMillis + " ms, saved "
+				+ (decodeMillis - waitMillis) + " ms (" + (System.nanoTime() - startTime) / 1000000 + " ms since start), "
+				+ AssetCache.getHits() + " cached, " + AssetCache.getMisses() + " decoded";
+	}
+}
@@ -0,0 +1,148 @@
+package utils.display;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+
+import org.lwjgl.BufferUtils;
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * An image decoded to RGBA pixels, padded to power of two dimensions the same way slick pads the textures it
+ * loads, ready to be uploaded without touching the source file again.  Decoding doesn't use GL, so it can be
+ * done on any thread.
+ */
+public class DecodedImage
+{
+	private int width;
+	private int height;
+	private int textureWidth;
+	private int textureHeight;
+	private boolean alpha;
+	private ByteBuffer pixels;	//direct, textureWidth * textureHeight RGBA pixels, top row first
+	
+	/**
+	 * Constructor
+	 * @param width image width
+	 * @param height image height
+	 * @param textureWidth padded width
+	 * @param textureHeight padded height
+	 * @param alpha true if any pixel is not fully opaque
+	 * @param pixels RGBA pixels of the padded image
+	 */
+	public DecodedImage(int width, int height, int textureWidth, int textureHeight, boolean alpha, ByteBuffer pixels)
+	{
+		this.width = width;
+		this.height = height;
+		this.textureWidth = textureWidth;
+		this.textureHeight = textureHeight;
+		this.alpha = alpha;
+		this.pixels = pixels;
+	}
+	
+	/**
+	 * Decode an image resource
+	 * @param path resource path of the image
+	 * @return the decoded image
+	 * @throws IOException if the resource can't be read or isn't an image
+	 */
+	public static DecodedImage decode(String path) throws IOException
+	{
+		InputStream in = ResourceLoader.getResourceAsStream(path);
+		BufferedImage image;
+		try {
+			image = ImageIO.read(in);
+		} finally {
+			in.close();
+		}
+		if (image == null)
+			throw new IOException("Unsupported image format: " + path);
+		
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int textureWidth = powerOfTwo(width);
+		int textureHeight = powerOfTwo(height);
+		int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+		
+		boolean alpha = false;
+		ByteBuffer pixels = BufferUtils.createByteBuffer(textureWidth * textureHeight * 4);
+		for (int y = 0; y < height; y ++)
+		{
+			pixels.position(y * textureWidth * 4);
+			for (int x = 0; x < width; x ++)
+			{
+				int p = argb[y * width + x];
+				pixels.put((byte)(p >> 16)).put((byte)(p >> 8)).put((byte)p).put((byte)(p >>> 24));
+				if ((p >>> 24) != 0xff)
+					alpha = true;
+			}
+		}
+		pixels.clear();
+		
+		return new DecodedImage(width, height, textureWidth, textureHeight, alpha, pixels);
+	}
+	
+	/**
+	 * @return the smallest power of two at least n
+	 */
+	private static int powerOfTwo(int n)
+	{
+		int p = 1;
+		while (p < n)
+		{
+			p *= 2;
+		}
+		return p;
+	}
+	
+	public int getWidth()
+	{
+		return width;
+	}
+	
+	public int getHeight()
+	{
+		return height;
+	}
+	
+	public int getTextureWidth()
+	{
+		return textureWidth;
+	}
+	
+	public int getTextureHeight()
+	{
+		return textureHeight;
+	}
+	
+	public boolean hasAlpha()
+	{
+		return alpha;
+	}
+	
+	/**
+	 * @return true if every pixel in a rectangle of the image is fully opaque
+	 */
+	public boolean isOpaque(int x, int y, int width, int height)
+	{
+		if (!alpha)
+			return true;
+		for (int row = y; row < y + height; row ++)
+		{
+			for (int col = x; col < x + width; col ++)
+			{
+				if ((pixels.get((row * textureWidth + col) * 4 + 3) & 0xff) != 0xff)
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	public ByteBuffer getPixels()
+	{
+		return pixels;
+	}
+}
@@ -3,7 +3,6 @@ package utils.display;
 import java.util.ArrayList;
 
 import org.lwjgl.input.Keyboard;
-import org.lwjgl.opengl.GL11;
 
 public class DisplayText
 {
@@ -17,6 +16,7 @@ public class DisplayText
 	private int speed = 1;
 	boolean pause = false;
 	int pauseCount = 0;
+	private Renderer renderer;	//renderer for the text box being drawn
 	
 	/**
 	 * Constructor
@@ -73,124 +73,148 @@ public class DisplayText
 	}
 	
 	/**
-	 * Render the background textbox and any text over it
+	 * Advance the text by one tick, a character at a time (or more at higher speeds) with pauses after
+	 * punctuation, until the text box is full and waiting for input
 	 */
-	public void renderText()
+	public void update()
 	{
-		//render text box
-		GL11.glPushMatrix();
-			GL11.glTranslatef(64, 28, 0);
-			GL11.glBegin(GL11.GL_QUADS);
-				GL11.glTexCoord2f(0, 192f/1024f);
-				GL11.glVertex2f(0, 0);
-				GL11.glTexCoord2f(672f/1024f, 192f/1024f);
-				GL11.glVertex2f(672, 0);
-				GL11.glTexCoord2f(672f/1024f, 0);
-				GL11.glVertex2f(672, 192);
-				GL11.glTexCoord2f(0, 0);
-				GL11.glVertex2f(0, 192);
-			GL11.glEnd();
-			
-			for (int i = 0; i <= currentRow; i ++)
+		if (text.size() == 0 || waitingForInput)
+			return;
+		
+		String row = text.get(0).get(currentRow);
+		if (speed == 1)
+		{
+			if (!pause)
 			{
-				String renderStr;
-				if (i < currentRow)
-				{
-					renderStr = text.get(0).get(i);
-					GL11.glPushMatrix();
-						renderString(renderStr, i);
-					GL11.glPopMatrix();
-				}
-				else
+				checkForPause(row.charAt(currentPos));
+			}
+			else if (pauseCount <= 0)
+			{
+				pause = false;
+				pauseCount = 0;
+			}
+		}
+		if (speed == 1 && pause)
+		{
+			pauseCount --;
+		}
+		else
+		{
+			if (currentPos == row.length() - 1)
+			{
+				if (currentRow == text.get(0).size() - 1)
 				{
-					if (speed == 1)
-					{
-						if (!pause)
-						{
-							char currentChar = text.get(0).get(i).charAt(currentPos);
-							checkForPause(currentChar);
-						}
-						else if (pauseCount <= 0)
-						{
-							pause = false;
-							pauseCount = 0;
-						}
-					}
-					renderStr = text.get(0).get(i).substring(0, currentPos + 1);
-					GL11.glPushMatrix();
-						renderString(renderStr, i);
-					GL11.glPopMatrix();
-					if (speed == 1 && pause)
-					{
-						pauseCount --;
-					}
-					else
-					{
-						if (currentPos == text.get(0).get(i).length() - 1)
-						{
-							if (currentRow == text.get(0).size() - 1)
-							{
-								//reached end of text box
-								waitingForInput = true;
-								break;
-							}
-							currentRow ++;
-							currentPos = 0;
-						}
-						else
-						{
-							currentPos += getSpeed();
-							if (currentPos >= text.get(0).get(i).length())
-								currentPos = text.get(0).get(i).length() - 1;
-						}
-					}
+					//reached end of text box
+					waitingForInput = true;
+					return;
 				}
+				currentRow ++;
+				currentPos = 0;
+			}
+			else
+			{
+				currentPos += getSpeed();
+				if (currentPos >= row.length())
+					currentPos = row.length() - 1;
+			}
+		}
+	}
+	
+	/**
+	 * Get the rows of the current text box shown so far, the last one cut off at the current character
+	 * @return the rows, a new array every call
+	 */
+	public String[] getVisibleRows()
+	{
+		if (text.size() == 0)
+			return new String[0];
+		
+		ArrayList<String> box = text.get(0);
+		String[] rows = new String[currentRow + 1];
+		for (int i = 0; i < currentRow; i ++)
+		{
+			rows[i] = box.get(i);
+		}
+		rows[currentRow] = box.get(currentRow).substring(0, currentPos + 1);
+		return rows;
+	}
+	
+	/**
+	 * Render the background textbox and any text over it.  Nothing about the text display is read besides its
+	 * font, so a text box captured earlier can be drawn while the text is being advanced.
+	 * @param renderer the renderer to draw through, with the text texture bound
+	 * @param name name of the speaking character
+	 * @param rows rows of text to show, as returned by getVisibleRows
+	 */
+	public void renderText(Renderer renderer, String name, String[] rows)
+	{
+		this.renderer = renderer;
+		
+		//render text box
+		renderer.pushMatrix();
+			renderer.translate(64, 28);
+			renderer.beginQuads();
+				renderer.texCoord(0, 192f/1024f);
+				renderer.vertex(0, 0);
+				renderer.texCoord(672f/1024f, 192f/1024f);
+				renderer.vertex(672, 0);
+				renderer.texCoord(672f/1024f, 0);
+				renderer.vertex(672, 192);
+				renderer.texCoord(0, 0);
+				renderer.vertex(0, 192);
+			renderer.end();
+			
+			for (int i = 0; i < rows.length; i ++)
+			{
+				renderer.pushMatrix();
+					renderString(rows[i], i);
+				renderer.popMatrix();
 			}
-		GL11.glPopMatrix();
+		renderer.popMatrix();
 		
 		//render name box
-		GL11.glPushMatrix();
-			GL11.glTranslatef(64+40, 192, 0);
-			GL11.glBegin(GL11.GL_QUADS);
-				GL11.glTexCoord2f(672f/1024f, 36f/1024f);
-				GL11.glVertex2f(0, 0);
-				GL11.glTexCoord2f(684f/1024f, 36f/1024f);
-				GL11.glVertex2f(12, 0);
-				GL11.glTexCoord2f(684f/1024f, 0);
-				GL11.glVertex2f(12, 36);
-				GL11.glTexCoord2f(672f/1024f, 0);
-				GL11.glVertex2f(0, 36);
-			GL11.glEnd();
+		renderer.pushMatrix();
+			renderer.translate(64+40, 192);
+			renderer.beginQuads();
+				renderer.texCoord(672f/1024f, 36f/1024f);
+				renderer.vertex(0, 0);
+				renderer.texCoord(684f/1024f, 36f/1024f);
+				renderer.vertex(12, 0);
+				renderer.texCoord(684f/1024f, 0);
+				renderer.vertex(12, 36);
+				renderer.texCoord(672f/1024f, 0);
+				renderer.vertex(0, 36);
+			renderer.end();
 			
-			int length = getPixelCount(getName());
-			GL11.glTranslatef(12, 0, 0);
-			GL11.glBegin(GL11.GL_QUADS);
-				GL11.glTexCoord2f(684f/1024f, 36f/1024f);
-				GL11.glVertex2f(0, 0);
-				GL11.glTexCoord2f(714f/1024f, 36f/1024f);
-				GL11.glVertex2f(length, 0);
-				GL11.glTexCoord2f(714f/1024f, 0);
-				GL11.glVertex2f(length, 36);
-				GL11.glTexCoord2f(684f/1024f, 0);
-				GL11.glVertex2f(0, 36);
-			GL11.glEnd();
+			int length = getPixelCount(name);
+			renderer.translate(12, 0);
+			renderer.beginQuads();
+				renderer.texCoord(684f/1024f, 36f/1024f);
+				renderer.vertex(0, 0);
+				renderer.texCoord(714f/1024f, 36f/1024f);
+				renderer.vertex(length, 0);
+				renderer.texCoord(714f/1024f, 0);
+				renderer.vertex(length, 36);
+				renderer.texCoord(684f/1024f, 0);
+				renderer.vertex(0, 36);
+			renderer.end();
 			
-			GL11.glTranslatef(length, 0, 0);
-			GL11.glBegin(GL11.GL_QUADS);
-				GL11.glTexCoord2f(714f/1024f, 36f/1024f);
-				GL11.glVertex2f(0, 0);
-				GL11.glTexCoord2f(726f/1024f, 36f/1024f);
-				GL11.glVertex2f(12, 0);
-				GL11.glTexCoord2f(726f/1024f, 0);
-				GL11.glVertex2f(12, 36);
-				GL11.glTexCoord2f(714f/1024f, 0);
-				GL11.glVertex2f(0, 36);
-			GL11.glEnd();
-		GL11.glEnd();
+			renderer.translate(length, 0);
+			renderer.beginQuads();
+				renderer.texCoord(714f/1024f, 36f/1024f);
+				renderer.vertex(0, 0);
+				renderer.texCoord(726f/1024f, 36f/1024f);
+				renderer.vertex(12, 0);
+				renderer.texCoord(726f/1024f, 0);
+				renderer.vertex(12, 36);
+				renderer.texCoord(714f/1024f, 0);
+				renderer.vertex(0, 36);
+			renderer.end();
+		renderer.end();
 		
-		GL11.glTranslatef(-length, 8, 0);
-		this.renderString(getName());
-		GL11.glPopMatrix();
+		renderer.translate(-length, 8);
+		this.renderString(name);
+		renderer.popMatrix();
 		
 	}
 
@@ -248,7 +272,7 @@ public class DisplayText
 	 */
 	private void renderString(String str, int row)
 	{
-		GL11.glTranslatef(25, 141 - 22*row, 0);
+		renderer.translate(25, 141 - 22*row);
 		renderString(str);
 	}
 	
@@ -261,7 +285,7 @@ public class DisplayText
 		{
 			char c = str.charAt(i);
 			renderChar(c);
-			GL11.glTranslatef(getPixelCount(c), 0, 0);
+			renderer.translate(getPixelCount(c), 0);
 		}
 		renderChar(str.charAt(str.length() - 1));
 	}
@@ -290,16 +314,16 @@ public class DisplayText
 		}
 		float texYEnd = texYBegin + 20/1024f;
 		
-		GL11.glBegin(GL11.GL_QUADS);
-			GL11.glTexCoord2f(texXBegin, texYEnd);
-			GL11.glVertex2f(0, 0);
-			GL11.glTexCoord2f(texXEnd, texYEnd);
-			GL11.glVertex2f(getPixelCount(c) - 1, 0);
-			GL11.glTexCoord2f(texXEnd, texYBegin);
-			GL11.glVertex2f(getPixelCount(c) - 1, 20);
-			GL11.glTexCoord2f(texXBegin, texYBegin);
-			GL11.glVertex2f(0, 20);
-		GL11.glEnd();
+		renderer.beginQuads();
+			renderer.texCoord(texXBegin, texYEnd);
+			renderer.vertex(0, 0);
+			renderer.texCoord(texXEnd, texYEnd);
+			renderer.vertex(getPixelCount(c) - 1, 0);
+			renderer.texCoord(texXEnd, texYBegin);
+			renderer.vertex(getPixelCount(c) - 1, 20);
+			renderer.texCoord(texXBegin, texYBegin);
+			renderer.vertex(0, 20);
+		renderer.end();
 	}
 
 	/**
@@ -0,0 +1,231 @@
+package utils.display;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+
+import org.lwjgl.opengl.EXTFramebufferObject;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GLContext;
+import org.newdawn.slick.opengl.Texture;
+import org.newdawn.slick.opengl.TextureImpl;
+
+/**
+ * Renderer that draws to the current OpenGL context, needs a created display
+ */
+public class GLRenderer implements Renderer
+{
+	private static final int FLOATS_PER_VERTEX = 8;	//x, y, s, t, r, g, b, a
+	private static final int BUFFER_FLOATS_PER_VERTEX = 4;	//x, y, s, t
+	
+	private HashMap<Integer, int[]> framebufferTextures = new HashMap<Integer, int[]>();	//{texture, width, height} of each framebuffer
+	
+	@Override
+	public void clear()
+	{
+		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+	}
+	
+	@Override
+	public void pushMatrix()
+	{
+		GL11.glPushMatrix();
+	}
+	
+	@Override
+	public void popMatrix()
+	{
+		GL11.glPopMatrix();
+	}
+	
+	@Override
+	public void translate(float x, float y)
+	{
+		GL11.glTranslatef(x, y, 0);
+	}
+	
+	@Override
+	public void setColor(float r, float g, float b, float a)
+	{
+		GL11.glColor4f(r, g, b, a);
+	}
+	
+	@Override
+	public void bindTexture(Texture texture)
+	{
+		GL11.glEnable(GL11.GL_TEXTURE_2D);
+		texture.bind();
+		GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+	}
+	
+	@Override
+	public void beginQuads()
+	{
+		GL11.glBegin(GL11.GL_QUADS);
+	}
+	
+	@Override
+	public void texCoord(float s, float t)
+	{
+		GL11.glTexCoord2f(s, t);
+	}
+	
+	@Override
+	public void vertex(float x, float y)
+	{
+		GL11.glVertex2f(x, y);
+	}
+	
+	@Override
+	public void end()
+	{
+		GL11.glEnd();
+	}
+	
+	@Override
+	public void drawQuads(FloatBuffer vertices, int firstQuad, int quadCount)
+	{
+		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+		GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+		vertices.position(0);
+		GL11.glVertexPointer(2, FLOATS_PER_VERTEX * 4, vertices);
+		vertices.position(2);
+		GL11.glTexCoordPointer(2, FLOATS_PER_VERTEX * 4, vertices);
+		vertices.position(4);
+		GL11.glColorPointer(4, FLOATS_PER_VERTEX * 4, vertices);
+		
+		GL11.glDrawArrays(GL11.GL_QUADS, firstQuad * 4, quadCount * 4);
+		
+		GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+		GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+	}
+	
+	@Override
+	public int createBuffer(FloatBuffer vertices)
+	{
+		int buffer = GL15.glGenBuffers();
+		updateBuffer(buffer, vertices);
+		return buffer;
+	}
+	
+	@Override
+	public void updateBuffer(int buffer, FloatBuffer vertices)
+	{
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, buffer);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, vertices, GL15.GL_STATIC_DRAW);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+	
+	@Override
+	public void drawBuffer(int buffer, FloatBuffer colors, int firstQuad, int quadCount)
+	{
+		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+		GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, buffer);
+		GL11.glVertexPointer(2, GL11.GL_FLOAT, BUFFER_FLOATS_PER_VERTEX * 4, 0);
+		GL11.glTexCoordPointer(2, GL11.GL_FLOAT, BUFFER_FLOATS_PER_VERTEX * 4, 2 * 4);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		GL11.glColorPointer(4, 0, colors);
+		
+		GL11.glDrawArrays(GL11.GL_QUADS, firstQuad * 4, quadCount * 4);
+		
+		GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+		GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+	}
+	
+	@Override
+	public void setPhase(renderPhase phase){}
+	
+	@Override
+	public boolean supportsFramebuffers()
+	{
+		return GLContext.getCapabilities().GL_EXT_framebuffer_object;
+	}
+	
+	@Override
+	public int createFramebuffer(int width, int height)
+	{
+		int texture = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, width, height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer)null);
+		
+		int framebuffer = EXTFramebufferObject.glGenFramebuffersEXT();
+		EXTFramebufferObject.glBindFramebufferEXT(EXTFramebufferObject.GL_FRAMEBUFFER_EXT, framebuffer);
+		EXTFramebufferObject.glFramebufferTexture2DEXT(EXTFramebufferObject.GL_FRAMEBUFFER_EXT, EXTFramebufferObject.GL_COLOR_ATTACHMENT0_EXT,
+				GL11.GL_TEXTURE_2D, texture, 0);
+		boolean complete = EXTFramebufferObject.glCheckFramebufferStatusEXT(EXTFramebufferObject.GL_FRAMEBUFFER_EXT) == EXTFramebufferObject.GL_FRAMEBUFFER_COMPLETE_EXT;
+		EXTFramebufferObject.glBindFramebufferEXT(EXTFramebufferObject.GL_FRAMEBUFFER_EXT, 0);
+		//slick skips binding a texture it thinks is still bound
+		TextureImpl.unbind();
+		
+		if (!complete)
+		{
+			EXTFramebufferObject.glDeleteFramebuffersEXT(framebuffer);
+			GL11.glDeleteTextures(texture);
+			return 0;
+		}
+		framebufferTextures.put(framebuffer, new int[] {texture, width, height});
+		return framebuffer;
+	}
+	
+	@Override
+	public void deleteFramebuffer(int framebuffer)
+	{
+		int[] texture = framebufferTextures.remove(framebuffer);
+		if (texture == null)
+			return;
+		EXTFramebufferObject.glDeleteFramebuffersEXT(framebuffer);
+		GL11.glDeleteTextures(texture[0]);
+	}
+	
+	@Override
+	public void bindFramebuffer(int framebuffer)
+	{
+		EXTFramebufferObject.glBindFramebufferEXT(EXTFramebufferObject.GL_FRAMEBUFFER_EXT, framebuffer);
+	}
+	
+	@Override
+	public void drawFramebuffer(int framebuffer, int width, int height)
+	{
+		int[] texture = framebufferTextures.get(framebuffer);
+		float tConv = ((float)width)/((float)texture[1]);
+		float tConvY = ((float)height)/((float)texture[2]);
+		
+		GL11.glDisable(GL11.GL_BLEND);
+		GL11.glEnable(GL11.GL_TEXTURE_2D);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture[0]);
+		GL11.glColor3f(1, 1, 1);
+		GL11.glBegin(GL11.GL_QUADS);
+			GL11.glTexCoord2f(0, 0);
+			GL11.glVertex2f(0, 0);
+			GL11.glTexCoord2f(tConv, 0);
+			GL11.glVertex2f(width, 0);
+			GL11.glTexCoord2f(tConv, tConvY);
+			GL11.glVertex2f(width, height);
+			GL11.glTexCoord2f(0, tConvY);
+			GL11.glVertex2f(0, height);
+		GL11.glEnd();
+		GL11.glEnable(GL11.GL_BLEND);
+		TextureImpl.unbind();
+	}
+	
+	@Override
+	public void enableScissor(int x, int y, int width, int height)
+	{
+		GL11.glEnable(GL11.GL_SCISSOR_TEST);
+		GL11.glScissor(x, y, width, height);
+	}
+	
+	@Override
+	public void disableScissor()
+	{
+		GL11.glDisable(GL11.GL_SCISSOR_TEST);
+	}
+}
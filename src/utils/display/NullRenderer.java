@@ -0,0 +1,93 @@
+package utils.display;
+
+import java.nio.FloatBuffer;
+
+import org.newdawn.slick.opengl.Texture;
+
+/**
+ * Renderer that draws nothing, for running the game without a display.  Everything leading up to drawing
+ * (lighting, tile selection, mesh building, sprite batching) still happens, so headless runs exercise the same
+ * code as a displayed game.
+ */
+public class NullRenderer implements Renderer
+{
+	private int bufferCount = 0;
+	private int framebufferCount = 0;
+	
+	@Override
+	public void clear(){}
+	
+	@Override
+	public void pushMatrix(){}
+	
+	@Override
+	public void popMatrix(){}
+	
+	@Override
+	public void translate(float x, float y){}
+	
+	@Override
+	public void setColor(float r, float g, float b, float a){}
+	
+	@Override
+	public void bindTexture(Texture texture){}
+	
+	@Override
+	public void beginQuads(){}
+	
+	@Override
+	public void texCoord(float s, float t){}
+	
+	@Override
+	public void vertex(float x, float y){}
+	
+	@Override
+	public void end(){}
+	
+	@Override
+	public void drawQuads(FloatBuffer vertices, int firstQuad, int quadCount){}
+	
+	@Override
+	public int createBuffer(FloatBuffer vertices)
+	{
+		bufferCount ++;
+		return bufferCount;
+	}
+	
+	@Override
+	public void updateBuffer(int buffer, FloatBuffer vertices){}
+	
+	@Override
+	public void drawBuffer(int buffer, FloatBuffer colors, int firstQuad, int quadCount){}
+	
+	@Override
+	public void setPhase(renderPhase phase){}
+	
+	@Override
+	public boolean supportsFramebuffers()
+	{
+		return true;
+	}
+	
+	@Override
+	public int createFramebuffer(int width, int height)
+	{
+		framebufferCount ++;
+		return framebufferCount;
+	}
+	
+	@Override
+	public void deleteFramebuffer(int framebuffer){}
+	
+	@Override
+	public void bindFramebuffer(int framebuffer){}
+	
+	@Override
+	public void drawFramebuffer(int framebuffer, int width, int height){}
+	
+	@Override
+	public void enableScissor(int x, int y, int width, int height){}
+	
+	@Override
+	public void disableScissor(){}
+}
@@ -0,0 +1,494 @@
+package utils.display;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+import org.lwjgl.BufferUtils;
+import org.newdawn.slick.opengl.Texture;
+
+/**
+ * Renderer that records a frame's draw calls instead of drawing them, so they can be counted without a display
+ * and replayed to another renderer afterwards.  Calls are stored as a stream of opcodes and integer arguments, a
+ * stream of float arguments, and a list of the textures bound; vertex and color arrays are copied when they're
+ * recorded, since their owners reuse them.
+ * 
+ * Counts of quads, draw calls, texture binds, matrix pushes, glBegin blocks, and color changes are kept for each
+ * phase of the frame.  Vertex buffers and framebuffers are created in the target renderer straight away, so a
+ * recorded frame can be replayed to the renderer they belong to.  Drawing into a framebuffer is recorded like
+ * any other drawing, and copying one to the screen counts as a draw call of one quad.
+ */
+public class RecordingRenderer implements Renderer
+{
+	//opcodes, followed in the int stream by their integer arguments
+	private static final int CLEAR = 0;
+	private static final int PUSH_MATRIX = 1;
+	private static final int POP_MATRIX = 2;
+	private static final int TRANSLATE = 3;	//2 floats
+	private static final int COLOR = 4;	//4 floats
+	private static final int BIND_TEXTURE = 5;	//texture index
+	private static final int BEGIN_QUADS = 6;
+	private static final int TEX_COORD = 7;	//2 floats
+	private static final int VERTEX = 8;	//2 floats
+	private static final int END = 9;
+	private static final int DRAW_QUADS = 10;	//quad count, FLOATS_PER_QUAD floats per quad
+	private static final int DRAW_BUFFER = 11;	//buffer, first quad, quad count, COLOR_FLOATS_PER_QUAD floats per quad
+	private static final int PHASE = 12;	//phase ordinal
+	private static final int BIND_FRAMEBUFFER = 13;	//framebuffer
+	private static final int DRAW_FRAMEBUFFER = 14;	//framebuffer, width, height
+	private static final int SCISSOR = 15;	//x, y, width, height
+	private static final int DISABLE_SCISSOR = 16;
+	
+	//statistics kept for each phase
+	public static final int QUADS = 0;
+	public static final int DRAW_CALLS = 1;	//glBegin blocks and array draws
+	public static final int TEXTURE_BINDS = 2;
+	public static final int MATRIX_PUSHES = 3;
+	public static final int BEGIN_BLOCKS = 4;
+	public static final int COLOR_CHANGES = 5;
+	private static final int STAT_COUNT = 6;
+	private static final String[] STAT_NAMES = {"quads", "draws", "binds", "pushes", "begins", "colors"};
+	
+	private static final int FLOATS_PER_QUAD = 32;	//x, y, s, t, r, g, b, a for 4 vertices
+	private static final int COLOR_FLOATS_PER_QUAD = 16;	//r, g, b, a for 4 vertices
+	
+	private Renderer target;	//owner of vertex buffers and framebuffers
+	
+	private int[] ops = new int[1024];
+	private int opCount = 0;
+	private float[] floats = new float[4096];
+	private int floatCount = 0;
+	private ArrayList<Texture> textures = new ArrayList<Texture>();
+	
+	private renderPhase phase = renderPhase.terrain;
+	private int[][] stats = new int[renderPhase.values().length][STAT_COUNT];
+	private int immediateVertices = 0;	//vertices given since the last beginQuads
+	
+	private FloatBuffer replayBuffer = BufferUtils.createFloatBuffer(64 * FLOATS_PER_QUAD);
+	
+	/**
+	 * Constructor
+	 * @param target the renderer vertex buffers and framebuffers are created in, and that recorded frames are
+	 * normally replayed to
+	 */
+	public RecordingRenderer(Renderer target)
+	{
+		this.target = target;
+	}
+	
+	/**
+	 * Discard the recorded calls and statistics and start recording a new frame
+	 */
+	public void beginFrame()
+	{
+		opCount = 0;
+		floatCount = 0;
+		textures.clear();
+		for (int p = 0; p < stats.length; p ++)
+		{
+			for (int n = 0; n < STAT_COUNT; n ++)
+				stats[p][n] = 0;
+		}
+		phase = renderPhase.terrain;
+	}
+	
+	@Override
+	public void clear()
+	{
+		op(CLEAR);
+	}
+	
+	@Override
+	public void pushMatrix()
+	{
+		op(PUSH_MATRIX);
+		count(MATRIX_PUSHES, 1);
+	}
+	
+	@Override
+	public void popMatrix()
+	{
+		op(POP_MATRIX);
+	}
+	
+	@Override
+	public void translate(float x, float y)
+	{
+		op(TRANSLATE);
+		floats(2);
+		floats[floatCount ++] = x;
+		floats[floatCount ++] = y;
+	}
+	
+	@Override
+	public void setColor(float r, float g, float b, float a)
+	{
+		op(COLOR);
+		floats(4);
+		floats[floatCount ++] = r;
+		floats[floatCount ++] = g;
+		floats[floatCount ++] = b;
+		floats[floatCount ++] = a;
+		count(COLOR_CHANGES, 1);
+	}
+	
+	@Override
+	public void bindTexture(Texture texture)
+	{
+		op(BIND_TEXTURE);
+		op(textures.size());
+		textures.add(texture);
+		count(TEXTURE_BINDS, 1);
+	}
+	
+	@Override
+	public void beginQuads()
+	{
+		op(BEGIN_QUADS);
+		immediateVertices = 0;
+		count(BEGIN_BLOCKS, 1);
+		count(DRAW_CALLS, 1);
+	}
+	
+	@Override
+	public void texCoord(float s, float t)
+	{
+		op(TEX_COORD);
+		floats(2);
+		floats[floatCount ++] = s;
+		floats[floatCount ++] = t;
+	}
+	
+	@Override
+	public void vertex(float x, float y)
+	{
+		op(VERTEX);
+		floats(2);
+		floats[floatCount ++] = x;
+		floats[floatCount ++] = y;
+		immediateVertices ++;
+		if (immediateVertices % 4 == 0)
+			count(QUADS, 1);
+	}
+	
+	@Override
+	public void end()
+	{
+		op(END);
+	}
+	
+	@Override
+	public void drawQuads(FloatBuffer vertices, int firstQuad, int quadCount)
+	{
+		op(DRAW_QUADS);
+		op(quadCount);
+		floats(quadCount * FLOATS_PER_QUAD);
+		for (int n = 0; n < quadCount * FLOATS_PER_QUAD; n ++)
+			floats[floatCount ++] = vertices.get(firstQuad * FLOATS_PER_QUAD + n);
+		count(DRAW_CALLS, 1);
+		count(QUADS, quadCount);
+	}
+	
+	@Override
+	public int createBuffer(FloatBuffer vertices)
+	{
+		return target.createBuffer(vertices);
+	}
+	
+	@Override
+	public void updateBuffer(int buffer, FloatBuffer vertices)
+	{
+		target.updateBuffer(buffer, vertices);
+	}
+	
+	@Override
+	public void drawBuffer(int buffer, FloatBuffer colors, int firstQuad, int quadCount)
+	{
+		op(DRAW_BUFFER);
+		op(buffer);
+		op(firstQuad);
+		op(quadCount);
+		floats(quadCount * COLOR_FLOATS_PER_QUAD);
+		for (int n = 0; n < quadCount * COLOR_FLOATS_PER_QUAD; n ++)
+			floats[floatCount ++] = colors.get(firstQuad * COLOR_FLOATS_PER_QUAD + n);
+		count(DRAW_CALLS, 1);
+		count(QUADS, quadCount);
+	}
+	
+	@Override
+	public void setPhase(renderPhase newPhase)
+	{
+		if (newPhase == phase)
+			return;
+		op(PHASE);
+		op(newPhase.ordinal());
+		phase = newPhase;
+	}
+	
+	@Override
+	public boolean supportsFramebuffers()
+	{
+		return target.supportsFramebuffers();
+	}
+	
+	@Override
+	public int createFramebuffer(int width, int height)
+	{
+		return target.createFramebuffer(width, height);
+	}
+	
+	@Override
+	public void deleteFramebuffer(int framebuffer)
+	{
+		target.deleteFramebuffer(framebuffer);
+	}
+	
+	@Override
+	public void bindFramebuffer(int framebuffer)
+	{
+		op(BIND_FRAMEBUFFER);
+		op(framebuffer);
+	}
+	
+	@Override
+	public void drawFramebuffer(int framebuffer, int width, int height)
+	{
+		op(DRAW_FRAMEBUFFER);
+		op(framebuffer);
+		op(width);
+		op(height);
+		count(DRAW_CALLS, 1);
+		count(TEXTURE_BINDS, 1);
+		count(QUADS, 1);
+	}
+	
+	@Override
+	public void enableScissor(int x, int y, int width, int height)
+	{
+		op(SCISSOR);
+		op(x);
+		op(y);
+		op(width);
+		op(height);
+	}
+	
+	@Override
+	public void disableScissor()
+	{
+		op(DISABLE_SCISSOR);
+	}
+	
+	/**
+	 * Issue the recorded frame's calls to another renderer, in order; the recording is kept
+	 * @param renderer the renderer to draw to, normally the target
+	 * @throws IllegalStateException if the calls didn't use up exactly the recorded arguments
+	 */
+	public void replay(Renderer renderer)
+	{
+		int op = 0;
+		int f = 0;
+		while (op < opCount)
+		{
+			switch (ops[op ++])
+			{
+			case CLEAR: renderer.clear(); break;
+			case PUSH_MATRIX: renderer.pushMatrix(); break;
+			case POP_MATRIX: renderer.popMatrix(); break;
+			case TRANSLATE:
+				renderer.translate(floats[f], floats[f + 1]);
+				f += 2;
+				break;
+			case COLOR:
+				renderer.setColor(floats[f], floats[f + 1], floats[f + 2], floats[f + 3]);
+				f += 4;
+				break;
+			case BIND_TEXTURE: renderer.bindTexture(textures.get(ops[op ++])); break;
+			case BEGIN_QUADS: renderer.beginQuads(); break;
+			case TEX_COORD:
+				renderer.texCoord(floats[f], floats[f + 1]);
+				f += 2;
+				break;
+			case VERTEX:
+				renderer.vertex(floats[f], floats[f + 1]);
+				f += 2;
+				break;
+			case END: renderer.end(); break;
+			case DRAW_QUADS:
+			{
+				int quadCount = ops[op ++];
+				FloatBuffer vertices = replayBuffer(quadCount * FLOATS_PER_QUAD);
+				vertices.put(floats, f, quadCount * FLOATS_PER_QUAD);
+				f += quadCount * FLOATS_PER_QUAD;
+				renderer.drawQuads(vertices, 0, quadCount);
+				break;
+			}
+			case DRAW_BUFFER:
+			{
+				int buffer = ops[op ++];
+				int firstQuad = ops[op ++];
+				int quadCount = ops[op ++];
+				//colors are indexed by vertex, so they go back at the same place in the array
+				FloatBuffer colors = replayBuffer((firstQuad + quadCount) * COLOR_FLOATS_PER_QUAD);
+				colors.position(firstQuad * COLOR_FLOATS_PER_QUAD);
+				colors.put(floats, f, quadCount * COLOR_FLOATS_PER_QUAD);
+				colors.position(0);
+				f += quadCount * COLOR_FLOATS_PER_QUAD;
+				renderer.drawBuffer(buffer, colors, firstQuad, quadCount);
+				break;
+			}
+			case PHASE: renderer.setPhase(renderPhase.values()[ops[op ++]]); break;
+			case BIND_FRAMEBUFFER: renderer.bindFramebuffer(ops[op ++]); break;
+			case DRAW_FRAMEBUFFER:
+				renderer.drawFramebuffer(ops[op], ops[op + 1], ops[op + 2]);
+				op += 3;
+				break;
+			case SCISSOR:
+				renderer.enableScissor(ops[op], ops[op + 1], ops[op + 2], ops[op + 3]);
+				op += 4;
+				break;
+			case DISABLE_SCISSOR: renderer.disableScissor(); break;
+			}
+		}
+		if (op != opCount || f != floatCount)
+			throw new IllegalStateException("Replay used " + op + " of " + opCount + " ops and " + f + " of " + floatCount + " floats");
+	}
+	
+	/**
+	 * Compare two recordings call for call, used to check that replaying a frame into another recorder gives
+	 * back the same frame
+	 * @param other the other recording
+	 * @return true if both hold the same calls, arguments, textures, and counts
+	 */
+	public boolean matches(RecordingRenderer other)
+	{
+		if (opCount != other.opCount || floatCount != other.floatCount || !textures.equals(other.textures))
+			return false;
+		for (int n = 0; n < opCount; n ++)
+		{
+			if (ops[n] != other.ops[n])
+				return false;
+		}
+		for (int n = 0; n < floatCount; n ++)
+		{
+			if (Float.floatToIntBits(floats[n]) != Float.floatToIntBits(other.floats[n]))
+				return false;
+		}
+		for (int p = 0; p < stats.length; p ++)
+		{
+			for (int n = 0; n < STAT_COUNT; n ++)
+			{
+				if (stats[p][n] != other.stats[p][n])
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Get a count for the recorded frame
+	 * @param p the phase
+	 * @param stat which statistic, such as QUADS or TEXTURE_BINDS
+	 * @return the count
+	 */
+	public int getCount(renderPhase p, int stat)
+	{
+		return stats[p.ordinal()][stat];
+	}
+	
+	/**
+	 * Get a count for the recorded frame, summed over every phase
+	 * @param stat which statistic, such as QUADS or TEXTURE_BINDS
+	 * @return the count
+	 */
+	public int getTotal(int stat)
+	{
+		int total = 0;
+		for (int p = 0; p < stats.length; p ++)
+			total += stats[p][stat];
+		return total;
+	}
+	
+	/**
+	 * @return number of calls recorded for the frame
+	 */
+	public int getCallCount()
+	{
+		int calls = 0;
+		int op = 0;
+		while (op < opCount)
+		{
+			switch (ops[op ++])
+			{
+			case BIND_TEXTURE: case PHASE: case BIND_FRAMEBUFFER: op += 1; break;
+			case DRAW_QUADS: op += 1; break;
+			case DRAW_BUFFER: case DRAW_FRAMEBUFFER: op += 3; break;
+			case SCISSOR: op += 4; break;
+			}
+			calls ++;
+		}
+		return calls;
+	}
+	
+	/**
+	 * @return a table of the recorded frame's counts, one row per phase
+	 */
+	public String getReport()
+	{
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-9s", "phase"));
+		for (int n = 0; n < STAT_COUNT; n ++)
+			report.append(String.format("%8s", STAT_NAMES[n]));
+		for (renderPhase p : renderPhase.values())
+		{
+			report.append(String.format("%n%-9s", p));
+			for (int n = 0; n < STAT_COUNT; n ++)
+				report.append(String.format("%8d", stats[p.ordinal()][n]));
+		}
+		report.append(String.format("%n%-9s", "total"));
+		for (int n = 0; n < STAT_COUNT; n ++)
+			report.append(String.format("%8d", getTotal(n)));
+		report.append(String.format("%n%d calls, %d KB recorded", getCallCount(), (opCount * 4 + floatCount * 4) / 1024));
+		return report.toString();
+	}
+	
+	private void op(int value)
+	{
+		if (opCount == ops.length)
+		{
+			int[] grown = new int[ops.length * 2];
+			System.arraycopy(ops, 0, grown, 0, opCount);
+			ops = grown;
+		}
+		ops[opCount ++] = value;
+	}
+	
+	/**
+	 * Make room for more float arguments
+	 */
+	private void floats(int needed)
+	{
+		if (floatCount + needed <= floats.length)
+			return;
+		int size = floats.length * 2;
+		while (size < floatCount + needed)
+			size *= 2;
+		float[] grown = new float[size];
+		System.arraycopy(floats, 0, grown, 0, floatCount);
+		floats = grown;
+	}
+	
+	private void count(int stat, int amount)
+	{
+		stats[phase.ordinal()][stat] += amount;
+	}
+	
+	/**
+	 * Get the scratch buffer used for replaying arrays, cleared and big enough for a number of floats
+	 */
+	private FloatBuffer replayBuffer(int size)
+	{
+		if (replayBuffer.capacity() < size)
+			replayBuffer = BufferUtils.createFloatBuffer(Math.max(size, replayBuffer.capacity() * 2));
+		replayBuffer.clear();
+		return replayBuffer;
+	}
+}
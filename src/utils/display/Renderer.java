@@ -0,0 +1,129 @@
+package utils.display;
+
+import java.nio.FloatBuffer;
+
+import org.newdawn.slick.opengl.Texture;
+
+/**
+ * Backend that the world, sprite batches, and text boxes draw through, so the game can run with or without a
+ * display.  Calls follow OpenGL's fixed function pipeline: a matrix stack of translations, a current color, a
+ * bound texture, and quads given between beginQuads and end one vertex at a time, or from arrays of vertices.
+ */
+public interface Renderer
+{
+	/**
+	 * Parts of a frame, for attributing draw calls when profiling
+	 */
+	public enum renderPhase
+	{
+		terrain, things, agents, overlay, cache	//cache is the cached scene being copied to the screen
+	}
+	
+	/**
+	 * Clear the screen to the background color
+	 */
+	public void clear();
+	
+	public void pushMatrix();
+	
+	public void popMatrix();
+	
+	public void translate(float x, float y);
+	
+	/**
+	 * Set the color that following vertices are tinted with
+	 */
+	public void setColor(float r, float g, float b, float a);
+	
+	/**
+	 * Enable texturing and bind a texture sheet for the following quads, magnified without filtering
+	 */
+	public void bindTexture(Texture texture);
+	
+	/**
+	 * Start a block of quads given one vertex at a time, each texture coordinate before its vertex
+	 */
+	public void beginQuads();
+	
+	public void texCoord(float s, float t);
+	
+	public void vertex(float x, float y);
+	
+	/**
+	 * Finish a block of quads
+	 */
+	public void end();
+	
+	/**
+	 * Draw quads from interleaved x, y, s, t, r, g, b, a vertices with the bound texture
+	 * @param vertices the vertices, four per quad
+	 * @param firstQuad index of the first quad to draw
+	 * @param quadCount number of quads to draw
+	 */
+	public void drawQuads(FloatBuffer vertices, int firstQuad, int quadCount);
+	
+	/**
+	 * Create a vertex buffer holding interleaved x, y, s, t vertices, for geometry that is drawn many times
+	 * @param vertices the vertices, four per quad
+	 * @return the buffer's name
+	 */
+	public int createBuffer(FloatBuffer vertices);
+	
+	/**
+	 * Replace the contents of a vertex buffer
+	 */
+	public void updateBuffer(int buffer, FloatBuffer vertices);
+	
+	/**
+	 * Draw quads from a vertex buffer with the bound texture
+	 * @param buffer the buffer's name
+	 * @param colors r, g, b, a of each vertex in the buffer
+	 * @param firstQuad index of the first quad to draw
+	 * @param quadCount number of quads to draw
+	 */
+	public void drawBuffer(int buffer, FloatBuffer colors, int firstQuad, int quadCount);
+	
+	/**
+	 * Mark the following calls as part of a phase of the frame; only matters to renderers that keep statistics
+	 */
+	public void setPhase(renderPhase phase);
+	
+	/**
+	 * @return true if the backend can draw into offscreen framebuffers
+	 */
+	public boolean supportsFramebuffers();
+	
+	/**
+	 * Create an offscreen framebuffer drawing into a texture of its own
+	 * @param width width of the framebuffer in pixels
+	 * @param height height of the framebuffer in pixels
+	 * @return the framebuffer's name, 0 if one couldn't be created
+	 */
+	public int createFramebuffer(int width, int height);
+	
+	/**
+	 * Release a framebuffer and its texture
+	 */
+	public void deleteFramebuffer(int framebuffer);
+	
+	/**
+	 * Direct the following calls into a framebuffer
+	 * @param framebuffer the framebuffer's name, 0 for the screen
+	 */
+	public void bindFramebuffer(int framebuffer);
+	
+	/**
+	 * Draw the bottom left corner of a framebuffer's contents as one unblended quad at the current position
+	 * @param framebuffer the framebuffer's name
+	 * @param width width of the area drawn in pixels
+	 * @param height height of the area drawn in pixels
+	 */
+	public void drawFramebuffer(int framebuffer, int width, int height);
+	
+	/**
+	 * Limit drawing and clearing to a rectangle until the scissor is disabled
+	 */
+	public void enableScissor(int x, int y, int width, int height);
+	
+	public void disableScissor();
+}
@@ -0,0 +1,338 @@
+package utils.display;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import org.lwjgl.BufferUtils;
+import org.newdawn.slick.opengl.Texture;
+
+import utils.display.Renderer.renderPhase;
+
+/**
+ * Collects textured quads for things and agents and draws them with as few texture binds and draw calls as
+ * possible.  Quads are submitted the same way they would be drawn in immediate mode, between begin and end, at
+ * the current offset and color.
+ * 
+ * Quads are drawn in the order they are submitted, except that a quad may be moved back to join an earlier run
+ * of quads using the same texture when nothing submitted since that run overlaps it, which can't change what
+ * ends up on screen.  The batch must be flushed before anything else is drawn over or under its quads.
+ * 
+ * Submitted quads are bucketed by screen area as they come in, so checking a quad for overlaps only looks at
+ * the quads near it rather than everything submitted since the last flush.
+ */
+public class SpriteBatch
+{
+	private static final int FLOATS_PER_VERTEX = 8;	//x, y, s, t, r, g, b, a
+	private static final int FLOATS_PER_QUAD = 4 * FLOATS_PER_VERTEX;
+	private static final int BUCKET_SIZE = 64;	//width and height of the screen area of a bucket, in pixels
+	private static final int BUCKETS = 16;	//buckets across and down, screen areas further out wrap around
+	
+	//quads in the order they were submitted
+	private int quadCount = 0;
+	private float[] quads = new float[64 * FLOATS_PER_QUAD];
+	private float[] bounds = new float[64 * 4];	//xMin, yMin, xMax, yMax of each quad
+	private int[] quadRun = new int[64];	//run each quad is drawn in
+	
+	//runs of quads sharing a texture and phase, in the order they are drawn
+	private ArrayList<Texture> runTextures = new ArrayList<Texture>();
+	private ArrayList<renderPhase> runPhases = new ArrayList<renderPhase>();
+	private IdentityHashMap<Texture, int[]> lastRuns = new IdentityHashMap<Texture, int[]>();	//[phase], last run of each texture and phase, -1 if none
+	
+	//quads touching each screen bucket, in submission order
+	private int[][] bucketQuads = new int[BUCKETS * BUCKETS][8];
+	private int[] bucketCounts = new int[BUCKETS * BUCKETS];
+	
+	private FloatBuffer vertices = BufferUtils.createFloatBuffer(64 * FLOATS_PER_QUAD);
+	
+	//state for the quad being submitted
+	private float offsetX;
+	private float offsetY;
+	private float red = 1;
+	private float green = 1;
+	private float blue = 1;
+	private float alpha = 1;
+	private Texture texture;
+	private renderPhase phase = renderPhase.things;
+	private int vertexCount;
+	private float s;
+	private float t;
+	
+	private Renderer renderer;
+	
+	//totals since the last reset, for profiling
+	private int drawCalls = 0;
+	private int quadsDrawn = 0;
+	
+	/**
+	 * Constructor
+	 * @param renderer the renderer quads are drawn through
+	 */
+	public SpriteBatch(Renderer renderer)
+	{
+		this.renderer = renderer;
+	}
+	
+	/**
+	 * Set the renderer quads are drawn through, the batch should be flushed first
+	 */
+	public void setRenderer(Renderer renderer)
+	{
+		this.renderer = renderer;
+	}
+	
+	/**
+	 * Set the screen position that submitted vertices are relative to
+	 */
+	public void setOffset(float x, float y)
+	{
+		offsetX = x;
+		offsetY = y;
+	}
+	
+	/**
+	 * Set the color submitted vertices are tinted with
+	 */
+	public void setColor(float r, float g, float b, float a)
+	{
+		red = r;
+		green = g;
+		blue = b;
+		alpha = a;
+	}
+	
+	/**
+	 * Set the phase of the frame submitted quads are drawn as part of, quads of different phases aren't batched
+	 * together
+	 */
+	public void setPhase(renderPhase quadPhase)
+	{
+		phase = quadPhase;
+	}
+	
+	/**
+	 * Start a quad
+	 * @param quadTexture the texture the quad is drawn from
+	 */
+	public void begin(Texture quadTexture)
+	{
+		texture = quadTexture;
+		vertexCount = 0;
+		ensureCapacity(quadCount + 1);
+	}
+	
+	/**
+	 * Set the texture coordinates of the next vertex
+	 */
+	public void texCoord(float sCoord, float tCoord)
+	{
+		s = sCoord;
+		t = tCoord;
+	}
+	
+	/**
+	 * Add a vertex to the current quad
+	 */
+	public void vertex(float x, float y)
+	{
+		int n = quadCount * FLOATS_PER_QUAD + vertexCount * FLOATS_PER_VERTEX;
+		quads[n] = x + offsetX;
+		quads[n + 1] = y + offsetY;
+		quads[n + 2] = s;
+		quads[n + 3] = t;
+		quads[n + 4] = red;
+		quads[n + 5] = green;
+		quads[n + 6] = blue;
+		quads[n + 7] = alpha;
+		vertexCount ++;
+	}
+	
+	/**
+	 * Finish the current quad, which must have exactly four vertices
+	 */
+	public void end()
+	{
+		if (vertexCount != 4)
+			throw new IllegalStateException("A quad needs 4 vertices, got " + vertexCount);
+		
+		int base = quadCount * FLOATS_PER_QUAD;
+		float xMin = Float.MAX_VALUE, yMin = Float.MAX_VALUE, xMax = -Float.MAX_VALUE, yMax = -Float.MAX_VALUE;
+		for (int v = 0; v < 4; v ++)
+		{
+			xMin = Math.min(xMin, quads[base + v * FLOATS_PER_VERTEX]);
+			xMax = Math.max(xMax, quads[base + v * FLOATS_PER_VERTEX]);
+			yMin = Math.min(yMin, quads[base + v * FLOATS_PER_VERTEX + 1]);
+			yMax = Math.max(yMax, quads[base + v * FLOATS_PER_VERTEX + 1]);
+		}
+		bounds[quadCount * 4] = xMin;
+		bounds[quadCount * 4 + 1] = yMin;
+		bounds[quadCount * 4 + 2] = xMax;
+		bounds[quadCount * 4 + 3] = yMax;
+		
+		quadRun[quadCount] = chooseRun(quadCount);
+		quadCount ++;
+		texture = null;
+	}
+	
+	/**
+	 * Find the run a new quad can be drawn in: the last run with its texture and phase, if no quad in a later
+	 * run overlaps it, otherwise a new run at the end
+	 */
+	private int chooseRun(int quad)
+	{
+		int[] textureRuns = lastRuns.get(texture);
+		if (textureRuns == null)
+		{
+			textureRuns = new int[renderPhase.values().length];
+			Arrays.fill(textureRuns, -1);
+			lastRuns.put(texture, textureRuns);
+		}
+		
+		int run = textureRuns[phase.ordinal()];
+		int bxMin = bucket(bounds[quad * 4]), bxMax = bucketEnd(bounds[quad * 4], bounds[quad * 4 + 2]);
+		int byMin = bucket(bounds[quad * 4 + 1]), byMax = bucketEnd(bounds[quad * 4 + 1], bounds[quad * 4 + 3]);
+		for (int bx = bxMin; bx <= bxMax && run >= 0; bx ++)
+		{
+			for (int by = byMin; by <= byMax && run >= 0; by ++)
+			{
+				int b = wrap(bx) * BUCKETS + wrap(by);
+				for (int n = 0; n < bucketCounts[b]; n ++)
+				{
+					int q = bucketQuads[b][n];
+					if (quadRun[q] > run && overlaps(q, quad))
+					{
+						run = -1;
+						break;
+					}
+				}
+			}
+		}
+		if (run < 0)
+		{
+			runTextures.add(texture);
+			runPhases.add(phase);
+			run = runTextures.size() - 1;
+			textureRuns[phase.ordinal()] = run;
+		}
+		
+		for (int bx = bxMin; bx <= bxMax; bx ++)
+		{
+			for (int by = byMin; by <= byMax; by ++)
+			{
+				int b = wrap(bx) * BUCKETS + wrap(by);
+				if (bucketCounts[b] == bucketQuads[b].length)
+					bucketQuads[b] = Arrays.copyOf(bucketQuads[b], bucketCounts[b] * 2);
+				bucketQuads[b][bucketCounts[b] ++] = quad;
+			}
+		}
+		return run;
+	}
+	
+	private static int bucket(float coordinate)
+	{
+		return (int)Math.floor(coordinate / BUCKET_SIZE);
+	}
+	
+	/**
+	 * @return last bucket a span touches, a span across every bucket stops once it has wrapped all the way round
+	 */
+	private static int bucketEnd(float min, float max)
+	{
+		return Math.min(bucket(max), bucket(min) + BUCKETS - 1);
+	}
+	
+	private static int wrap(int b)
+	{
+		return ((b % BUCKETS) + BUCKETS) % BUCKETS;
+	}
+	
+	private boolean overlaps(int a, int b)
+	{
+		return bounds[a * 4] < bounds[b * 4 + 2] && bounds[b * 4] < bounds[a * 4 + 2]
+				&& bounds[a * 4 + 1] < bounds[b * 4 + 3] && bounds[b * 4 + 1] < bounds[a * 4 + 3];
+	}
+	
+	/**
+	 * Draw every quad submitted since the last flush, one draw call per run
+	 */
+	public void flush()
+	{
+		if (quadCount == 0)
+			return;
+		
+		//gather the quads of each run together, keeping their submission order within the run
+		int runCount = runTextures.size();
+		int[] runStart = new int[runCount + 1];
+		for (int q = 0; q < quadCount; q ++)
+		{
+			runStart[quadRun[q] + 1] ++;
+		}
+		for (int run = 0; run < runCount; run ++)
+		{
+			runStart[run + 1] += runStart[run];
+		}
+		int[] next = runStart.clone();
+		vertices.clear();
+		for (int q = 0; q < quadCount; q ++)
+		{
+			vertices.position(next[quadRun[q]] ++ * FLOATS_PER_QUAD);
+			vertices.put(quads, q * FLOATS_PER_QUAD, FLOATS_PER_QUAD);
+		}
+		
+		for (int run = 0; run < runCount; run ++)
+		{
+			renderer.setPhase(runPhases.get(run));
+			renderer.bindTexture(runTextures.get(run));
+			renderer.drawQuads(vertices, runStart[run], runStart[run + 1] - runStart[run]);
+		}
+		
+		drawCalls += runCount;
+		quadsDrawn += quadCount;
+		quadCount = 0;
+		runTextures.clear();
+		runPhases.clear();
+		lastRuns.clear();
+		Arrays.fill(bucketCounts, 0);
+	}
+	
+	private void ensureCapacity(int quadsNeeded)
+	{
+		if (quadsNeeded * 4 <= bounds.length)
+			return;
+		
+		int capacity = Math.max(quadsNeeded, bounds.length / 2);
+		float[] newQuads = new float[capacity * FLOATS_PER_QUAD];
+		System.arraycopy(quads, 0, newQuads, 0, quadCount * FLOATS_PER_QUAD);
+		quads = newQuads;
+		float[] newBounds = new float[capacity * 4];
+		System.arraycopy(bounds, 0, newBounds, 0, quadCount * 4);
+		bounds = newBounds;
+		int[] newRuns = new int[capacity];
+		System.arraycopy(quadRun, 0, newRuns, 0, quadCount);
+		quadRun = newRuns;
+		vertices = BufferUtils.createFloatBuffer(capacity * FLOATS_PER_QUAD);
+	}
+	
+	/**
+	 * @return draw calls made since the last reset
+	 */
+	public int getDrawCalls()
+	{
+		return drawCalls;
+	}
+	
+	/**
+	 * @return quads drawn since the last reset
+	 */
+	public int getQuadsDrawn()
+	{
+		return quadsDrawn;
+	}
+	
+	public void resetStats()
+	{
+		drawCalls = 0;
+		quadsDrawn = 0;
+	}
+}
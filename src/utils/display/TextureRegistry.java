@@ -0,0 +1,192 @@
+package utils.display;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.lwjgl.opengl.GL11;
+import org.newdawn.slick.opengl.Texture;
+import org.newdawn.slick.opengl.TextureImpl;
+import org.newdawn.slick.opengl.TextureLoader;
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * Process-wide cache of textures keyed by resource path.  Each sheet is decoded and uploaded once, the first
+ * time it is requested, and every later request for the same path gets the same texture, so loading scales with
+ * the number of distinct sheets rather than the number of things and agents using them.  Textures must be
+ * requested from the thread that owns the GL context.
+ * 
+ * If a preloader has been set, sheets it has decoded are uploaded from its pixels; otherwise sheets are loaded
+ * through the asset cache, falling back to slick's loader if that fails.  In headless mode nothing is decoded or
+ * uploaded; each path gets a texture object with no image behind it.
+ * 
+ * Pixels are normally dropped once uploaded.  Paths marked with keepImage hold on to the decoded sheet until
+ * it's taken, for code that needs to look at a sheet's pixels without decoding it again.
+ */
+public class TextureRegistry
+{
+	private static HashMap<String, Texture> textures = new HashMap<String, Texture>();
+	private static int loadCount = 0;	//sheets decoded and uploaded
+	private static int requestCount = 0;	//calls to getTexture, including ones served from the cache
+	private static long bytesUsed = 0;	//approximate texture memory of the loaded sheets
+	private static AssetPreloader preloader;
+	private static boolean headless = false;	//hand out empty textures, for running without a display
+	private static HashSet<String> keptPaths = new HashSet<String>();	//paths whose decoded pixels are kept after uploading
+	private static HashMap<String, DecodedImage> keptImages = new HashMap<String, DecodedImage>();
+	
+	/**
+	 * Set the preloader to take decoded sheets from, null to always decode on request
+	 */
+	public static synchronized void setPreloader(AssetPreloader assets)
+	{
+		preloader = assets;
+	}
+	
+	/**
+	 * Set whether textures are loaded, must be set before any are requested
+	 * @param noDisplay true to hand out empty textures instead of loading sheets
+	 */
+	public static synchronized void setHeadless(boolean noDisplay)
+	{
+		headless = noDisplay;
+	}
+	
+	/**
+	 * Get the shared texture for a PNG resource, loading it the first time it is requested
+	 * @param path resource path of the sheet
+	 * @return the shared texture
+	 * @throws IOException if the sheet can't be loaded
+	 */
+	public static synchronized Texture getTexture(String path) throws IOException
+	{
+		requestCount ++;
+		Texture texture = textures.get(path);
+		if (texture == null && headless)
+		{
+			texture = new TextureImpl(path, GL11.GL_TEXTURE_2D, 0);
+			textures.put(path, texture);
+		}
+		else if (texture == null)
+		{
+			DecodedImage image = preloader == null ? null : preloader.take(path);
+			if (image == null)
+				image = loadCached(path);
+			if (image != null)
+			{
+				texture = upload(path, image);
+				if (keptPaths.remove(path))
+					keptImages.put(path, image);
+			}
+			else
+				texture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream(path));
+			textures.put(path, texture);
+			loadCount ++;
+			bytesUsed += (long)texture.getTextureWidth() * texture.getTextureHeight() * (texture.hasAlpha() ? 4 : 3);
+		}
+		return texture;
+	}
+	
+	/**
+	 * Keep the decoded pixels of a sheet when it's loaded, must be called before the sheet is first requested
+	 * @param path resource path of the sheet
+	 */
+	public static synchronized void keepImage(String path)
+	{
+		keptPaths.add(path);
+	}
+	
+	/**
+	 * Take the decoded pixels kept for a sheet, the registry doesn't hold on to them afterwards
+	 * @param path resource path of the sheet
+	 * @return the pixels the sheet was uploaded from, null if they weren't kept, in headless mode, or if the sheet
+	 * was loaded by slick
+	 */
+	public static synchronized DecodedImage takeImage(String path)
+	{
+		keptPaths.remove(path);
+		return keptImages.remove(path);
+	}
+	
+	private static DecodedImage loadCached(String path)
+	{
+		try {
+			return AssetCache.load(path);
+		} catch (IOException e) {
+			System.err.println("Loading " + path + " through the asset cache failed: " + e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Create a texture from decoded pixels, with the same filtering slick's loader uses
+	 */
+	private static Texture upload(String path, DecodedImage image)
+	{
+		int id = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, image.getTextureWidth(), image.getTextureHeight(), 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, image.getPixels());
+		
+		TextureImpl texture = new TextureImpl(path, GL11.GL_TEXTURE_2D, id);
+		texture.setWidth(image.getWidth());
+		texture.setHeight(image.getHeight());
+		texture.setTextureWidth(image.getTextureWidth());
+		texture.setTextureHeight(image.getTextureHeight());
+		texture.setAlpha(image.hasAlpha());
+		
+		//slick tracks the last bound texture, so make sure the next bind isn't skipped
+		TextureImpl.unbind();
+		return texture;
+	}
+	
+	/**
+	 * Release every loaded texture; textures handed out before this must not be used afterwards
+	 */
+	public static synchronized void releaseAll()
+	{
+		if (!headless)
+		{
+			for (Texture texture : textures.values())
+			{
+				texture.release();
+			}
+		}
+		textures.clear();
+		keptImages.clear();
+		bytesUsed = 0;
+	}
+	
+	/**
+	 * @return the number of distinct sheets currently loaded
+	 */
+	public static synchronized int getTextureCount()
+	{
+		return textures.size();
+	}
+	
+	/**
+	 * @return the number of times a sheet has been decoded and uploaded
+	 */
+	public static synchronized int getLoadCount()
+	{
+		return loadCount;
+	}
+	
+	/**
+	 * @return the number of textures requested, including ones served from the cache
+	 */
+	public static synchronized int getRequestCount()
+	{
+		return requestCount;
+	}
+	
+	/**
+	 * @return approximate texture memory used by the loaded sheets, in bytes
+	 */
+	public static synchronized long getBytesUsed()
+	{
+		return bytesUsed;
+	}
+}
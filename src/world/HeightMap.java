@@ -0,0 +1,119 @@
+package world;
+
+/**
+ * Per-column heights of the topmost blocking terrain and the topmost cell blocked by anything (terrain,
+ * things, or agents).  World updates a column whenever one of its cells changes, which only rescans the
+ * column when its top cell is cleared, so roof and gravity checks can answer from a single lookup instead of
+ * walking the column themselves.  The map belongs to the simulation; shadows keep their own column heights.
+ */
+public class HeightMap {
+	private World world;
+	private int sizeX;
+	private int sizeY;
+	private int sizeZ;
+	
+	//[x * sizeY + y], -1 if nothing in the column qualifies
+	private int[] topBlockingTerrain;
+	private int[] topBlocking;
+	
+	private static final int BLOCKING_TERRAIN = 0;
+	private static final int BLOCKING = 1;
+	
+	/**
+	 * Constructor, every column starts out empty
+	 * @param world the world whose columns are tracked
+	 */
+	public HeightMap(World world)
+	{
+		this.world = world;
+		sizeX = world.terrainGrid.length;
+		sizeY = world.terrainGrid[0].length;
+		sizeZ = world.terrainGrid[0][0].length;
+		
+		topBlockingTerrain = new int[sizeX * sizeY];
+		topBlocking = new int[sizeX * sizeY];
+		for (int n = 0; n < sizeX * sizeY; n ++)
+		{
+			topBlockingTerrain[n] = -1;
+			topBlocking[n] = -1;
+		}
+	}
+	
+	/**
+	 * @return the z level of the topmost non-air terrain in the column, -1 if there is none
+	 */
+	public int getTopBlockingTerrain(int x, int y)
+	{
+		return topBlockingTerrain[x * sizeY + y];
+	}
+	
+	/**
+	 * @return the z level of the topmost cell in the column with blocking terrain, a blocking thing, or an agent,
+	 * -1 if there is none
+	 */
+	public int getTopBlocking(int x, int y)
+	{
+		return topBlocking[x * sizeY + y];
+	}
+	
+	/**
+	 * Update the column heights after the contents of a single cell changed.  Setting a cell is constant time;
+	 * clearing the current top cell scans down the column for the next one.
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 */
+	public void updateCell(int x, int y, int z)
+	{
+		int column = x * sizeY + y;
+		topBlockingTerrain[column] = updateTop(topBlockingTerrain[column], BLOCKING_TERRAIN, x, y, z);
+		topBlocking[column] = updateTop(topBlocking[column], BLOCKING, x, y, z);
+	}
+	
+	/**
+	 * Recompute every column from scratch, used when terrain is replaced wholesale
+	 */
+	public void rebuild()
+	{
+		for (int i = 0; i < sizeX; i ++)
+		{
+			for (int j = 0; j < sizeY; j ++)
+			{
+				int column = i * sizeY + j;
+				topBlockingTerrain[column] = scanDown(BLOCKING_TERRAIN, i, j, sizeZ - 1);
+				topBlocking[column] = scanDown(BLOCKING, i, j, sizeZ - 1);
+			}
+		}
+	}
+	
+	private int updateTop(int top, int kind, int x, int y, int z)
+	{
+		if (test(kind, x, y, z))
+			return Math.max(top, z);
+		if (z != top)
+			return top;
+		return scanDown(kind, x, y, z - 1);
+	}
+	
+	private int scanDown(int kind, int x, int y, int zStart)
+	{
+		for (int k = zStart; k >= 0; k --)
+		{
+			if (test(kind, x, y, k))
+				return k;
+		}
+		return -1;
+	}
+	
+	private boolean test(int kind, int x, int y, int z)
+	{
+		switch (kind)
+		{
+		case BLOCKING_TERRAIN:
+			return world.terrainGrid[x][y][z] != null && world.terrainGrid[x][y][z].isBlocking();
+		default:
+			return world.isCellBlocking(x, y, z);
+		}
+	}
+}
@@ -0,0 +1,1003 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import things.Thing;
+
+/**
+ * Keeps the light modification grid alive between frames and only recomputes the chunks of it that
+ * are affected by a changed light source, a moved agent or thing, or a terrain edit.  Chunks are solved
+ * lazily the first time they come near the camera and evicted once they are well out of view, so the
+ * cost of lighting scales with the size of the screen rather than the size of the world.
+ * 
+ * Lights that have never moved are baked into a static layer that is kept until an occluder near them changes
+ * or it is explicitly invalidated; solving a chunk starts from its baked static light and only merges moving
+ * lights and anti lights on top.
+ * 
+ * In background mode the recompute runs on a solver thread against a snapshot of the occluders and
+ * lights, writing into a back buffer that is swapped with the world's grid once the solve finishes.  The
+ * renderer keeps drawing the last completed grid in the meantime, for at most a set number of frames.
+ * 
+ * The engine belongs to the render thread.  Light sources are read from the snapshot being rendered, and the
+ * occluders from the world's render side copy, which World brings up to date before each update.
+ */
+public class LightEngine {
+	/**
+	 * How light spreads from a source: raycast tests line of sight from the source to every cell in range,
+	 * floodFill spreads outward through transparent cells in a single pass per light
+	 */
+	public enum propagationMode
+	{
+		raycast, floodFill;
+	}
+	
+	//face-adjacent neighbor offsets used by flood fill propagation
+	private static final int[][] NEIGHBORS = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+	
+	//chunks more than this many chunks outside the update box are evicted
+	private static final int RETAIN_MARGIN = 1;
+	
+	//worker threads shared by all worlds for computing light visibility
+	private static ExecutorService pool;
+	
+	//thread that runs whole solves in background mode, kept separate from the worker pool it submits to
+	private static ExecutorService solverThread;
+	
+	private World world;
+	private boolean[] chunkDirty;	//[cx * chunksY + cy], true if a resident chunk's values are out of date
+	private HashMap<Thing, LightState> lightStates;
+	private HashMap<Thing, LightState> antiLightStates;
+	private propagationMode mode = propagationMode.raycast;
+	private boolean parallel = true;	//compute light visibility on worker threads
+	private volatile long lastUpdateNanos;	//time spent in the most recent update, for comparing propagation modes
+	private OpacityGrid occluders;	//occluders read by the solve in progress
+	
+	//background solving
+	private boolean background = false;
+	private int maxStaleFrames = 2;	//frames the renderer may keep drawing an old grid before waiting on the solver
+	private Future<?> solve;	//solve in flight, null if the solver is idle
+	private int staleFrames;	//frames drawn since the solve in flight was started
+	private LightGrid backGrid;	//grid the solver writes into, swapped with the world's grid when a solve finishes
+	private ArrayList<int[]> backGridBehind;	//chunks the back grid is missing from the last swap, {cx, cy}
+	private ArrayList<int[]> solvingChunks;	//chunks being recomputed by the solve in flight, {cx, cy}
+	private ArrayList<int[]> pendingOccluders;	//cells changed while a solve was in flight, {x, y, z}
+	
+	//static light baking
+	private LightGrid staticGrid;	//brightest static light per cell, baked per chunk and never evicted
+	private boolean[] staticDirty;	//[cx * chunksY + cy], true if a chunk's baked static light is out of date
+	private float staticPowerTolerance = 0;	//static lights are only rebaked for power changes bigger than this, 0 keeps every flicker
+	
+	/**
+	 * Position and power of a light source as of the last time its contribution was applied to the grid, along
+	 * with its cached visibility
+	 */
+	private static class LightState
+	{
+		int x, y, z;
+		float power;
+		boolean seen;
+		boolean dynamic;	//true once the light has moved, static lights are baked into the static layer
+		LightVisibility visibility;	//null if it needs to be recomputed
+		
+		LightState(LightView light)
+		{
+			set(light);
+		}
+		
+		void set(LightView light)
+		{
+			if (!samePosition(light))
+				visibility = null;
+			x = light.getX();
+			y = light.getY();
+			z = light.getZ();
+			power = light.getPower();
+		}
+		
+		boolean matches(LightView light)
+		{
+			return samePosition(light) && light.getPower() == power;
+		}
+		
+		boolean samePosition(LightView light)
+		{
+			return light.getX() == x && light.getY() == y && light.getZ() == z;
+		}
+	}
+	
+	/**
+	 * Computes one light's visibility; only reads the world, so it can run on a worker thread
+	 */
+	private class VisibilityTask implements Callable<LightVisibility>
+	{
+		LightState state;
+		
+		VisibilityTask(LightState state)
+		{
+			this.state = state;
+		}
+		
+		public LightVisibility call()
+		{
+			return computeVisibility(state);
+		}
+	}
+	
+	/**
+	 * Constructor, chunks are computed as they come into view
+	 * @param world the world whose lighting is being maintained
+	 */
+	public LightEngine(World world)
+	{
+		this.world = world;
+		chunkDirty = new boolean[world.lightModGrid.getChunksX() * world.lightModGrid.getChunksY()];
+		staticGrid = new LightGrid(world.lightModGrid.getSizeX(), world.lightModGrid.getSizeY(), world.lightModGrid.getSizeZ());
+		staticDirty = new boolean[chunkDirty.length];
+		lightStates = new HashMap<Thing, LightState>();
+		antiLightStates = new HashMap<Thing, LightState>();
+		pendingOccluders = new ArrayList<int[]>();
+		invalidateAll();
+	}
+	
+	/**
+	 * Mark every chunk for a lighting recompute, used when terrain is replaced wholesale
+	 */
+	public void invalidateAll()
+	{
+		finishSolve();
+		for (LightState state : lightStates.values())
+			state.visibility = null;
+		for (LightState state : antiLightStates.values())
+			state.visibility = null;
+		for (int n = 0; n < chunkDirty.length; n ++)
+		{
+			chunkDirty[n] = true;
+			staticDirty[n] = true;
+		}
+	}
+	
+	/**
+	 * Rebake the static light layer, e.g. after a level has finished loading.  Chunks are rebaked as they come
+	 * into view.
+	 */
+	public void invalidateStatic()
+	{
+		finishSolve();
+		for (int n = 0; n < chunkDirty.length; n ++)
+		{
+			chunkDirty[n] = true;
+			staticDirty[n] = true;
+		}
+	}
+	
+	/**
+	 * Notify the engine that the light-blocking state of a cell may have changed (an agent or thing moved
+	 * in or out of it, or its terrain was edited).  Every light that reaches the cell has its visibility and the
+	 * chunks it covers recomputed.
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 */
+	public void occluderChanged(int x, int y, int z)
+	{
+		//the solver owns the light states while it runs, catch up once it is done
+		if (solve != null)
+		{
+			pendingOccluders.add(new int[] {x, y, z});
+			return;
+		}
+		markLightsReaching(lightStates, x, y, z);
+		markLightsReaching(antiLightStates, x, y, z);
+	}
+	
+	/**
+	 * Bring the light modification grid up to date.  Changed lights are detected here, then every chunk that
+	 * overlaps the given box and is either dirty or not yet resident is recomputed.  Dirty chunks outside the box
+	 * stay pending until they come into view, and chunks well outside it are evicted.  In background mode this
+	 * starts a solve if the solver is idle and swaps in the results of a finished one, waiting for it only if the
+	 * grid has been stale for too many frames.
+	 * 
+	 * @param xMin minimum x coordinate
+	 * @param xMax maximum x coordinate
+	 * @param yMin minimum y coordinate
+	 * @param yMax maximum y coordinate
+	 * @param zMin minimum z coordinate
+	 * @param zMax maximum z coordinate
+	 */
+	public void update(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax)
+	{
+		if (background)
+		{
+			updateInBackground(xMin, xMax, yMin, yMax, zMin, zMax);
+			return;
+		}
+		
+		long startTime = System.nanoTime();
+		ArrayList<int[]> bake = new ArrayList<int[]>();
+		ArrayList<int[]> visible = takeVisibleChunks(xMin, xMax, yMin, yMax, bake);
+		evictChunksOutside(xMin, xMax, yMin, yMax);
+		occluders = world.lightOpacity;
+		if (!visible.isEmpty())
+		{
+			ArrayList<LightState> lights = orderedStates(world.frame.getLights(), lightStates);
+			recomputeChunks(visible, bake, world.lightModGrid, filterStates(lights, false), filterStates(lights, true), 
+					orderedStates(world.frame.getAntiLights(), antiLightStates));
+		}
+		lastUpdateNanos = System.nanoTime() - startTime;
+	}
+	
+	private void updateInBackground(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax)
+	{
+		if (solve != null)
+		{
+			if (!solve.isDone() && staleFrames < maxStaleFrames)
+			{
+				staleFrames ++;
+				return;
+			}
+			finishSolve();
+		}
+		
+		//the solver is idle, so the light states can be brought up to date before starting the next solve
+		flushPendingOccluders();
+		evictChunksOutside(xMin, xMax, yMin, yMax);
+		
+		final ArrayList<int[]> bake = new ArrayList<int[]>();
+		final ArrayList<int[]> visible = takeVisibleChunks(xMin, xMax, yMin, yMax, bake);
+		if (visible.isEmpty())
+			return;
+		
+		if (backGrid == null)
+		{
+			backGrid = new LightGrid(world.lightModGrid);
+			backGridBehind = new ArrayList<int[]>();
+		}
+		
+		//snapshot everything the solver reads from the world
+		final LightGrid front = world.lightModGrid;
+		final LightGrid back = backGrid;
+		final ArrayList<int[]> behind = backGridBehind;
+		ArrayList<LightState> lights = orderedStates(world.frame.getLights(), lightStates);
+		final ArrayList<LightState> staticLights = filterStates(lights, false);
+		final ArrayList<LightState> dynamicLights = filterStates(lights, true);
+		final ArrayList<LightState> antiLights = orderedStates(world.frame.getAntiLights(), antiLightStates);
+		occluders = new OpacityGrid(world.lightOpacity);
+		solvingChunks = visible;
+		staleFrames = 0;
+		solve = getSolverThread().submit(new Runnable() {
+			public void run()
+			{
+				long startTime = System.nanoTime();
+				copyChunks(front, back, behind);
+				recomputeChunks(visible, bake, back, staticLights, dynamicLights, antiLights);
+				lastUpdateNanos = System.nanoTime() - startTime;
+			}
+		});
+	}
+	
+	/**
+	 * Wait for the solve in flight, if there is one, and swap its grid in as the world's light grid
+	 */
+	private void finishSolve()
+	{
+		if (solve == null)
+			return;
+		
+		boolean interrupted = false;
+		try {
+			while (true)
+			{
+				try {
+					solve.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			solve = null;
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		
+		LightGrid solved = backGrid;
+		backGrid = world.lightModGrid;
+		backGridBehind = solvingChunks;
+		world.lightModGrid = solved;
+		solvingChunks = null;
+	}
+	
+	/**
+	 * Apply the occluder changes that were queued while a solve was in flight
+	 */
+	private void flushPendingOccluders()
+	{
+		for (int n = 0; n < pendingOccluders.size(); n ++)
+		{
+			int[] cell = pendingOccluders.get(n);
+			occluderChanged(cell[0], cell[1], cell[2]);
+		}
+		pendingOccluders.clear();
+	}
+	
+	/**
+	 * Detect changed lights and collect every chunk overlapping the given box that is dirty or not resident
+	 * @param bake filled with the chunks among them whose static light needs to be baked first, {cx, cy}
+	 * @return the chunks to recompute now, {cx, cy}
+	 */
+	private ArrayList<int[]> takeVisibleChunks(int xMin, int xMax, int yMin, int yMax, ArrayList<int[]> bake)
+	{
+		detectLightChanges(world.frame.getLights(), lightStates, true);
+		detectLightChanges(world.frame.getAntiLights(), antiLightStates, false);
+		
+		LightGrid grid = world.lightModGrid;
+		int[] range = chunkRange(xMin, xMax, yMin, yMax, 0);
+		ArrayList<int[]> visible = new ArrayList<int[]>();
+		for (int cx = range[0]; cx <= range[1]; cx ++)
+		{
+			for (int cy = range[2]; cy <= range[3]; cy ++)
+			{
+				int n = cx * grid.getChunksY() + cy;
+				if (chunkDirty[n] || !grid.isResident(cx, cy))
+				{
+					visible.add(new int[] {cx, cy});
+					chunkDirty[n] = false;
+				}
+				if (staticDirty[n] || !staticGrid.isResident(cx, cy))
+				{
+					bake.add(new int[] {cx, cy});
+					staticDirty[n] = false;
+				}
+			}
+		}
+		return visible;
+	}
+	
+	/**
+	 * Release every chunk more than RETAIN_MARGIN chunks outside the given box from both light grids
+	 */
+	private void evictChunksOutside(int xMin, int xMax, int yMin, int yMax)
+	{
+		LightGrid grid = world.lightModGrid;
+		int[] range = chunkRange(xMin, xMax, yMin, yMax, RETAIN_MARGIN);
+		for (int cx = 0; cx < grid.getChunksX(); cx ++)
+		{
+			for (int cy = 0; cy < grid.getChunksY(); cy ++)
+			{
+				if (cx >= range[0] && cx <= range[1] && cy >= range[2] && cy <= range[3])
+					continue;
+				grid.evict(cx, cy);
+				if (backGrid != null)
+					backGrid.evict(cx, cy);
+				chunkDirty[cx * grid.getChunksY() + cy] = false;
+			}
+		}
+	}
+	
+	/**
+	 * Get the range of chunks covering a box of cells, grown by a margin and clamped to the world
+	 * @return {cxMin, cxMax, cyMin, cyMax}, inclusive
+	 */
+	private int[] chunkRange(int xMin, int xMax, int yMin, int yMax, int margin)
+	{
+		LightGrid grid = world.lightModGrid;
+		int cxMin = Math.max(0, xMin) / LightGrid.CHUNK_SIZE - margin;
+		int cxMax = Math.min(grid.getSizeX() - 1, xMax) / LightGrid.CHUNK_SIZE + margin;
+		int cyMin = Math.max(0, yMin) / LightGrid.CHUNK_SIZE - margin;
+		int cyMax = Math.min(grid.getSizeY() - 1, yMax) / LightGrid.CHUNK_SIZE + margin;
+		return new int[] {
+				Math.max(0, cxMin), Math.min(grid.getChunksX() - 1, cxMax),
+				Math.max(0, cyMin), Math.min(grid.getChunksY() - 1, cyMax)};
+	}
+	
+	/**
+	 * Copy the given chunks of one grid into another
+	 * @param chunks list of {cx, cy}
+	 */
+	private static void copyChunks(LightGrid from, LightGrid to, ArrayList<int[]> chunks)
+	{
+		for (int n = 0; n < chunks.size(); n ++)
+		{
+			to.copyChunk(from, chunks.get(n)[0], chunks.get(n)[1]);
+		}
+	}
+	
+	/**
+	 * Compare every light source against its recorded state, marking the old and new areas of any
+	 * light that was added, moved, changed power, or removed.  Lights that start out stationary are
+	 * static until they first move.  A static light whose power changes (flickering) only has the chunks it reaches
+	 * rebaked, and rebaking reapplies the falloff over each light's cached visibility without casting any rays.
+	 * 
+	 * @param bakeable false if none of the lights may go in the static layer
+	 */
+	private void detectLightChanges(LightView[] lights, HashMap<Thing, LightState> states, boolean bakeable)
+	{
+		for (LightState state : states.values())
+			state.seen = false;
+		
+		for (int n = 0; n < lights.length; n ++)
+		{
+			LightView light = lights[n];
+			LightState state = states.get(light.getLight());
+			if (state == null)
+			{
+				state = new LightState(light);
+				state.dynamic = !bakeable || !light.isStationary();
+				states.put(light.getLight(), state);
+				markDirty(lightBounds(state), !state.dynamic);
+			}
+			else if (!state.dynamic && !light.isStationary())
+			{
+				//started moving, take it out of the static layer
+				markDirty(lightBounds(state), true);
+				state.dynamic = true;
+				state.set(light);
+				markDirty(lightBounds(state), false);
+			}
+			else if (!state.matches(light))
+			{
+				boolean moved = !state.samePosition(light);
+				if (state.dynamic || moved || Math.abs(light.getPower() - state.power) > staticPowerTolerance)
+				{
+					markDirty(lightBounds(state), !state.dynamic);
+					if (moved)
+						state.dynamic = true;
+					state.set(light);
+					markDirty(lightBounds(state), !state.dynamic);
+				}
+			}
+			state.seen = true;
+		}
+		
+		Iterator<LightState> it = states.values().iterator();
+		while (it.hasNext())
+		{
+			LightState state = it.next();
+			if (!state.seen)
+			{
+				markDirty(lightBounds(state), !state.dynamic);
+				it.remove();
+			}
+		}
+	}
+	
+	private void markLightsReaching(HashMap<Thing, LightState> states, int x, int y, int z)
+	{
+		for (LightState state : states.values())
+		{
+			//the cached visibility may cover a larger radius than the light currently has
+			if (state.visibility != null && Math.abs(x - state.x) <= state.visibility.radius 
+					&& Math.abs(y - state.y) <= state.visibility.radius && Math.abs(z - state.z) <= state.visibility.radius)
+				state.visibility = null;
+			
+			int[] bounds = lightBounds(state);
+			if (x >= bounds[0] && x <= bounds[1] && y >= bounds[2] && y <= bounds[3] && z >= bounds[4] && z <= bounds[5])
+				markDirty(bounds, !state.dynamic);
+		}
+	}
+	
+	/**
+	 * Mark every chunk overlapping a region as out of date
+	 * @param region {xMin, xMax, yMin, yMax, zMin, zMax}
+	 * @param staticLayer true if the change affects a static light, so the chunks need to be rebaked as well
+	 */
+	private void markDirty(int[] region, boolean staticLayer)
+	{
+		int chunksY = world.lightModGrid.getChunksY();
+		for (int cx = region[0] / LightGrid.CHUNK_SIZE; cx <= region[1] / LightGrid.CHUNK_SIZE; cx ++)
+		{
+			for (int cy = region[2] / LightGrid.CHUNK_SIZE; cy <= region[3] / LightGrid.CHUNK_SIZE; cy ++)
+			{
+				chunkDirty[cx * chunksY + cy] = true;
+				if (staticLayer)
+					staticDirty[cx * chunksY + cy] = true;
+			}
+		}
+	}
+	
+	/**
+	 * Get the grid-clamped cube reached by a light
+	 * @return {xMin, xMax, yMin, yMax, zMin, zMax}
+	 */
+	private int[] lightBounds(LightState state)
+	{
+		int lightDst = (int)(state.power * 10);
+		return new int[] {
+				Math.max(state.x - lightDst, 0), Math.min(state.x + lightDst, world.terrainGrid.length - 1),
+				Math.max(state.y - lightDst, 0), Math.min(state.y + lightDst, world.terrainGrid[0].length - 1),
+				Math.max(state.z - lightDst, 0), Math.min(state.z + lightDst, world.terrainGrid[0][0].length - 1)};
+	}
+	
+	/**
+	 * Recompute the given chunks of the grid, making them resident.  Each chunk starts from its baked static light,
+	 * rebaking it first if needed, then moving lights are merged with the max rule and anti lights with the min
+	 * rule as a final phase.
+	 * @param chunks list of {cx, cy}
+	 * @param bake chunks whose static light needs to be baked, {cx, cy}
+	 * @param grid the light grid to write into
+	 * @param staticLights static light states in the world's light order
+	 * @param dynamicLights moving light states in the world's light order
+	 * @param antiLights anti light states in the world's anti light order
+	 */
+	private void recomputeChunks(ArrayList<int[]> chunks, ArrayList<int[]> bake, LightGrid grid, ArrayList<LightState> staticLights, 
+			ArrayList<LightState> dynamicLights, ArrayList<LightState> antiLights)
+	{
+		if (!bake.isEmpty())
+		{
+			boolean[] baking = new boolean[staticGrid.getChunksX() * staticGrid.getChunksY()];
+			ArrayList<int[]> bakeRegions = new ArrayList<int[]>(bake.size());
+			for (int n = 0; n < bake.size(); n ++)
+			{
+				int cx = bake.get(n)[0];
+				int cy = bake.get(n)[1];
+				staticGrid.clearChunk(cx, cy);
+				baking[cx * staticGrid.getChunksY() + cy] = true;
+				bakeRegions.add(staticGrid.chunkBounds(cx, cy));
+			}
+			applyPhase(bakeRegions, baking, staticLights, staticGrid, false);
+		}
+		
+		boolean[] solving = new boolean[grid.getChunksX() * grid.getChunksY()];
+		ArrayList<int[]> regions = new ArrayList<int[]>(chunks.size());
+		for (int n = 0; n < chunks.size(); n ++)
+		{
+			int cx = chunks.get(n)[0];
+			int cy = chunks.get(n)[1];
+			grid.copyChunk(staticGrid, cx, cy);
+			solving[cx * grid.getChunksY() + cy] = true;
+			regions.add(grid.chunkBounds(cx, cy));
+		}
+		
+		applyPhase(regions, solving, dynamicLights, grid, false);
+		applyPhase(regions, solving, antiLights, grid, true);
+	}
+	
+	/**
+	 * Get the recorded states of lights in the same order as the world's light list
+	 */
+	private ArrayList<LightState> orderedStates(LightView[] lights, HashMap<Thing, LightState> states)
+	{
+		ArrayList<LightState> ordered = new ArrayList<LightState>(lights.length);
+		for (int n = 0; n < lights.length; n ++)
+		{
+			LightState state = states.get(lights[n].getLight());
+			if (state != null)
+				ordered.add(state);
+		}
+		return ordered;
+	}
+	
+	/**
+	 * Get the states that are either all static or all moving, keeping their order
+	 */
+	private ArrayList<LightState> filterStates(ArrayList<LightState> states, boolean dynamic)
+	{
+		ArrayList<LightState> filtered = new ArrayList<LightState>(states.size());
+		for (int n = 0; n < states.size(); n ++)
+		{
+			if (states.get(n).dynamic == dynamic)
+				filtered.add(states.get(n));
+		}
+		return filtered;
+	}
+	
+	/**
+	 * Apply every light that reaches one of the chunks being solved.  Lights without a usable cached visibility
+	 * have it recomputed first, in parallel if enabled; the falloff is then merged into the grid in light order
+	 * so the output does not depend on thread scheduling.
+	 * @param regions bounds of the chunks being solved
+	 * @param solving [cx * chunksY + cy], true for the chunks being solved
+	 */
+	private void applyPhase(ArrayList<int[]> regions, boolean[] solving, ArrayList<LightState> states, LightGrid grid, boolean anti)
+	{
+		ArrayList<LightState> reaching = new ArrayList<LightState>();
+		ArrayList<VisibilityTask> tasks = new ArrayList<VisibilityTask>();
+		for (int n = 0; n < states.size(); n ++)
+		{
+			LightState state = states.get(n);
+			int[] bounds = lightBounds(state);
+			for (int r = 0; r < regions.size(); r ++)
+			{
+				if (intersects(bounds, regions.get(r)))
+				{
+					reaching.add(state);
+					if (!hasUsableVisibility(state))
+						tasks.add(new VisibilityTask(state));
+					break;
+				}
+			}
+		}
+		
+		computeVisibilities(tasks);
+		
+		for (int n = 0; n < reaching.size(); n ++)
+		{
+			applyFalloff(reaching.get(n), solving, grid, anti);
+		}
+	}
+	
+	/**
+	 * Run visibility tasks and store the results in their light states
+	 */
+	private void computeVisibilities(ArrayList<VisibilityTask> tasks)
+	{
+		if (parallel && tasks.size() > 1)
+		{
+			try {
+				List<Future<LightVisibility>> futures = getPool().invokeAll(tasks);
+				for (int n = 0; n < futures.size(); n ++)
+				{
+					tasks.get(n).state.visibility = futures.get(n).get();
+				}
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		//serial path, also used to finish the work if the parallel phase was interrupted
+		for (int n = 0; n < tasks.size(); n ++)
+		{
+			tasks.get(n).state.visibility = tasks.get(n).call();
+		}
+	}
+	
+	/**
+	 * Determine whether a light's cached visibility can be reused at its current radius.  Flickering can shrink
+	 * the radius by a cell; a raycast visibility computed for a larger radius is still exact for the smaller one,
+	 * but flood fill paths depend on the size of the cube so those must match.
+	 */
+	private boolean hasUsableVisibility(LightState state)
+	{
+		if (state.visibility == null)
+			return false;
+		int radius = (int)(state.power * 10);
+		if (state.visibility.radius == radius)
+			return true;
+		return mode == propagationMode.raycast && state.visibility.radius > radius;
+	}
+	
+	private boolean intersects(int[] a, int[] b)
+	{
+		return a[0] <= b[1] && a[1] >= b[0] && a[2] <= b[3] && a[3] >= b[2] && a[4] <= b[5] && a[5] >= b[4];
+	}
+	
+	/**
+	 * Merge a light's falloff over its cached visibility into the chunks being solved, keeping the brightest
+	 * light (or darkest anti light).  The visibility is stored as runs along z, which is also the innermost
+	 * axis of a chunk, so each run is merged with a single tight loop over consecutive values.
+	 */
+	private void applyFalloff(LightState state, boolean[] solving, LightGrid grid, boolean anti)
+	{
+		int[] bounds = lightBounds(state);
+		int chunksY = grid.getChunksY();
+		float power = state.power;
+		
+		LightVisibility v = state.visibility;
+		float[] dist = v.dist;
+		for (int r = 0; r < v.runCount; r ++)
+		{
+			int i = v.runX[r];
+			int j = v.runY[r];
+			//cached visibility may extend past the light's current radius
+			if (i < bounds[0] || i > bounds[1] || j < bounds[2] || j > bounds[3])
+				continue;
+			if (!solving[(i / LightGrid.CHUNK_SIZE) * chunksY + j / LightGrid.CHUNK_SIZE])
+				continue;
+			int kStart = Math.max(v.runZ[r], bounds[4]);
+			int kEnd = Math.min(v.runZ[r] + v.runLength[r] - 1, bounds[5]);
+			if (kStart > kEnd)
+				continue;
+			
+			short[] values = grid.chunkAt(i, j);
+			int index = grid.localIndex(i, j, kStart);
+			int end = index + (kEnd - kStart);
+			int d = v.runStart[r] + (kStart - v.runZ[r]);
+			
+			//modify light based on distance to light source, comparing quantized values
+			if (anti)
+			{
+				for (; index <= end; index ++, d ++)
+				{
+					short updateVal = LightGrid.quantize(Math.min(power + dist[d]/10.0f, 0));
+					if (updateVal < values[index])
+						values[index] = updateVal;
+				}
+			}
+			else
+			{
+				for (; index <= end; index ++, d ++)
+				{
+					short updateVal = LightGrid.quantize(Math.max(power - dist[d]/10.0f, 0));
+					if (updateVal > values[index])
+						values[index] = updateVal;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Compute the set of cells a light reaches within its current radius
+	 * @param state the light
+	 * @return the light's visibility
+	 */
+	private LightVisibility computeVisibility(LightState state)
+	{
+		int[] bounds = lightBounds(state);
+		int radius = (int)(state.power * 10);
+		LightVisibility v = new LightVisibility(radius, bounds);
+		switch (mode)
+		{
+		case floodFill:
+			floodFillLight(state, bounds, v);
+			break;
+		case raycast:
+		default:
+			raycastLight(state, bounds, v);
+			break;
+		}
+		v.finish();
+		return v;
+	}
+	
+	/**
+	 * Find every cell in the light's cube with an unblocked line of sight to the light source.  Rays are
+	 * traced through the shared ray template for the light's radius, so cells common to several rays are only
+	 * tested once and a blocking cell cuts off every target behind it.
+	 */
+	private void raycastLight(LightState state, int[] bounds, LightVisibility v)
+	{
+		int radius = (int)(state.power * 10);
+		if (radius < 0)
+			return;
+		LightRayTemplate rays = LightRayTemplate.forRadius(radius);
+		
+		int[] stack = new int[rays.getNodeCount()];
+		int top = 0;
+		stack[top ++] = 0;
+		while (top > 0)
+		{
+			int node = stack[-- top];
+			
+			//every cell between the source and this node is clear, so targets ending here are lit
+			int end = rays.firstTarget[node] + rays.targetCount[node];
+			for (int t = rays.firstTarget[node]; t < end; t ++)
+			{
+				int x = state.x + rays.targetX[t];
+				int y = state.y + rays.targetY[t];
+				int z = state.z + rays.targetZ[t];
+				if (world.isInBounds(x, y, z) && (!occluders.isLightBlocking(x, y, z) || facesLight(state, x, y, z)))
+					reach(state, v, x, y, z);
+			}
+			
+			for (int child = rays.firstChild[node]; child != -1; child = rays.nextSibling[child])
+			{
+				//skip subtrees with no targets inside the world
+				if (state.x + rays.subtreeMax[child * 3] < bounds[0] || state.x + rays.subtreeMin[child * 3] > bounds[1]
+						|| state.y + rays.subtreeMax[child * 3 + 1] < bounds[2] || state.y + rays.subtreeMin[child * 3 + 1] > bounds[3]
+						|| state.z + rays.subtreeMax[child * 3 + 2] < bounds[4] || state.z + rays.subtreeMin[child * 3 + 2] > bounds[5])
+					continue;
+				
+				int x = state.x + rays.nodeX[child];
+				int y = state.y + rays.nodeY[child];
+				int z = state.z + rays.nodeZ[child];
+				if (world.isInBounds(x, y, z) && !occluders.isLightBlocking(x, y, z))
+					stack[top ++] = child;
+			}
+		}
+	}
+	
+	/**
+	 * Spread light outward from the source through transparent cells in a single breadth first pass over the
+	 * light's cube.  Light-blocking cells are lit if they face the source but do not pass light on.
+	 */
+	private void floodFillLight(LightState state, int[] bounds, LightVisibility v)
+	{
+		int sizeX = bounds[1] - bounds[0] + 1;
+		int sizeY = bounds[3] - bounds[2] + 1;
+		int sizeZ = bounds[5] - bounds[4] + 1;
+		if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0)
+			return;
+		
+		//cells are indexed locally within the light's cube
+		boolean[] visited = new boolean[sizeX * sizeY * sizeZ];
+		int[] queue = new int[visited.length];
+		int head = 0, tail = 0;
+		
+		int start = ((state.x - bounds[0]) * sizeY + (state.y - bounds[2])) * sizeZ + (state.z - bounds[4]);
+		visited[start] = true;
+		queue[tail ++] = start;
+		
+		while (head < tail)
+		{
+			int index = queue[head ++];
+			int i = index / (sizeY * sizeZ) + bounds[0];
+			int j = (index / sizeZ) % sizeY + bounds[2];
+			int k = index % sizeZ + bounds[4];
+			
+			boolean isSource = index == start;
+			boolean blocking = !isSource && occluders.isLightBlocking(i, j, k);
+			if (isSource || !blocking || facesLight(state, i, j, k))
+				reach(state, v, i, j, k);
+			if (blocking)
+				continue;
+			
+			for (int n = 0; n < 6; n ++)
+			{
+				int i2 = i + NEIGHBORS[n][0];
+				int j2 = j + NEIGHBORS[n][1];
+				int k2 = k + NEIGHBORS[n][2];
+				if (i2 < bounds[0] || i2 > bounds[1] || j2 < bounds[2] || j2 > bounds[3] || k2 < bounds[4] || k2 > bounds[5])
+					continue;
+				int next = ((i2 - bounds[0]) * sizeY + (j2 - bounds[2])) * sizeZ + (k2 - bounds[4]);
+				if (!visited[next])
+				{
+					visited[next] = true;
+					queue[tail ++] = next;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Mirror of the special case in World.checkLightBlockingLineOfSight: blocking terrain is only lit on the faces
+	 * that are drawn towards the light
+	 */
+	private boolean facesLight(LightState state, int x, int y, int z)
+	{
+		if (occluders.isTerrainBlocking(x, y, z))
+		{
+			int dy = y - state.y;
+			int dz = z - state.z;
+			if (dy < 0)
+				return false;
+			else if (dy == 0 && dz > 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Record a cell reached by a light along with its distance to the light source
+	 */
+	private void reach(LightState state, LightVisibility v, int i2, int j2, int k2)
+	{
+		v.add(i2, j2, k2, LightVisibility.distance(state.x - i2, state.y - j2, state.z - k2));
+	}
+	
+	private static synchronized ExecutorService getPool()
+	{
+		if (pool == null)
+		{
+			pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "light-worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return pool;
+	}
+	
+	private static synchronized ExecutorService getSolverThread()
+	{
+		if (solverThread == null)
+		{
+			solverThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "light-solver");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return solverThread;
+	}
+	
+	/**
+	 * Enable or disable computing light visibility on worker threads
+	 * @param parallel true to compute in parallel
+	 */
+	public void setParallel(boolean parallel)
+	{
+		this.parallel = parallel;
+	}
+	
+	public boolean isParallel()
+	{
+		return parallel;
+	}
+	
+	/**
+	 * Switch between light propagation modes; the whole grid is recomputed with the new mode
+	 * @param mode the new propagation mode
+	 */
+	public void setMode(propagationMode mode)
+	{
+		if (this.mode != mode)
+		{
+			finishSolve();
+			this.mode = mode;
+			invalidateAll();
+		}
+	}
+	
+	public propagationMode getMode()
+	{
+		return mode;
+	}
+	
+	public long getLastUpdateNanos()
+	{
+		return lastUpdateNanos;
+	}
+	
+	/**
+	 * Enable or disable solving lighting on a background thread.  Turning it off waits for the solve in flight
+	 * so the world's grid is complete before the next synchronous update.
+	 * @param background true to solve in the background
+	 */
+	public void setBackground(boolean background)
+	{
+		if (this.background == background)
+			return;
+		finishSolve();
+		this.background = background;
+		backGrid = null;
+		backGridBehind = null;
+		flushPendingOccluders();
+	}
+	
+	public boolean isBackground()
+	{
+		return background;
+	}
+	
+	/**
+	 * Set how many frames the renderer may keep drawing the last completed grid while a background solve is
+	 * running before it waits for the solve to finish.  Zero waits every frame.
+	 * @param frames maximum staleness in frames
+	 */
+	public void setMaxStaleFrames(int frames)
+	{
+		maxStaleFrames = Math.max(0, frames);
+	}
+	
+	public int getMaxStaleFrames()
+	{
+		return maxStaleFrames;
+	}
+	
+	/**
+	 * Set how much a static light's power has to change before the chunks it reaches are rebaked.  The default of
+	 * zero rebakes on every change, so candles keep flickering at the cost of rebaking the chunks around them
+	 * whenever they do.  Candle flicker is at most 0.0125 per update, so any tolerance at or above that freezes
+	 * baked candles at the power they were baked with, in exchange for not rebaking.
+	 * @param tolerance largest power change that is ignored
+	 */
+	public void setStaticPowerTolerance(float tolerance)
+	{
+		staticPowerTolerance = tolerance;
+	}
+	
+	public float getStaticPowerTolerance()
+	{
+		return staticPowerTolerance;
+	}
+}
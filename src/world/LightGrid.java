@@ -0,0 +1,187 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * Light modification values for the grid, stored as fixed point shorts in chunks of CHUNK_SIZE by CHUNK_SIZE
+ * columns that span the full height of the world.  Chunks are only allocated while they are near the camera;
+ * cells in a chunk that is not resident read as unmodified.  Values are rounded to the nearest quantization
+ * step when stored; since rounding is monotonic, merging lights by comparing the stored values gives the same
+ * result as merging the original floats and then rounding.
+ */
+public class LightGrid {
+	public static final int STEPS_PER_UNIT = 1024;	//light values are stored to the nearest 1/1024
+	public static final int CHUNK_SIZE = 16;	//chunk length and width in cells
+	
+	private int sizeX;
+	private int sizeY;
+	private int sizeZ;
+	private int chunksX;
+	private int chunksY;
+	private short[][] chunks;	//[cx * chunksY + cy], z varies fastest within a chunk, null if not resident
+	
+	/**
+	 * Constructor, no chunks are resident
+	 * 
+	 * @param xSize world length
+	 * @param ySize world width
+	 * @param zSize world height
+	 */
+	public LightGrid(int xSize, int ySize, int zSize)
+	{
+		sizeX = xSize;
+		sizeY = ySize;
+		sizeZ = zSize;
+		chunksX = (xSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunksY = (ySize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunks = new short[chunksX * chunksY][];
+	}
+	
+	/**
+	 * Copy constructor, copies every resident chunk
+	 * @param other the grid to copy
+	 */
+	public LightGrid(LightGrid other)
+	{
+		this(other.sizeX, other.sizeY, other.sizeZ);
+		for (int n = 0; n < chunks.length; n ++)
+		{
+			if (other.chunks[n] != null)
+				chunks[n] = other.chunks[n].clone();
+		}
+	}
+	
+	/**
+	 * @return the dequantized light modification of a cell, zero if its chunk is not resident
+	 */
+	public float get(int x, int y, int z)
+	{
+		short[] chunk = chunks[(x / CHUNK_SIZE) * chunksY + y / CHUNK_SIZE];
+		if (chunk == null)
+			return 0;
+		return dequantize(chunk[localIndex(x, y, z)]);
+	}
+	
+	/**
+	 * Get the stored value of a cell in a resident chunk
+	 */
+	public short getQuantized(int x, int y, int z)
+	{
+		return chunks[(x / CHUNK_SIZE) * chunksY + y / CHUNK_SIZE][localIndex(x, y, z)];
+	}
+	
+	/**
+	 * Set the stored value of a cell in a resident chunk
+	 */
+	public void setQuantized(int x, int y, int z, short value)
+	{
+		chunks[(x / CHUNK_SIZE) * chunksY + y / CHUNK_SIZE][localIndex(x, y, z)] = value;
+	}
+	
+	/**
+	 * Get the values of the chunk containing a column, for working on a run of z levels at once
+	 * @return the chunk's values, null if it is not resident
+	 */
+	public short[] chunkAt(int x, int y)
+	{
+		return chunks[(x / CHUNK_SIZE) * chunksY + y / CHUNK_SIZE];
+	}
+	
+	/**
+	 * Get the index of a cell within its chunk's values; z levels of a column are consecutive
+	 */
+	public int localIndex(int x, int y, int z)
+	{
+		return ((x % CHUNK_SIZE) * CHUNK_SIZE + y % CHUNK_SIZE) * sizeZ + z;
+	}
+	
+	public boolean isResident(int cx, int cy)
+	{
+		return chunks[cx * chunksY + cy] != null;
+	}
+	
+	/**
+	 * Make a chunk resident if it isn't already and reset it to no light modification
+	 */
+	public void clearChunk(int cx, int cy)
+	{
+		int n = cx * chunksY + cy;
+		if (chunks[n] == null)
+			chunks[n] = new short[CHUNK_SIZE * CHUNK_SIZE * sizeZ];
+		else
+			Arrays.fill(chunks[n], (short)0);
+	}
+	
+	/**
+	 * Release a chunk's values
+	 */
+	public void evict(int cx, int cy)
+	{
+		chunks[cx * chunksY + cy] = null;
+	}
+	
+	/**
+	 * Copy a chunk from another grid of the same size, including whether it is resident
+	 */
+	public void copyChunk(LightGrid other, int cx, int cy)
+	{
+		int n = cx * chunksY + cy;
+		if (other.chunks[n] == null)
+			chunks[n] = null;
+		else if (chunks[n] == null)
+			chunks[n] = other.chunks[n].clone();
+		else
+			System.arraycopy(other.chunks[n], 0, chunks[n], 0, chunks[n].length);
+	}
+	
+	/**
+	 * Get the cells covered by a chunk, clamped to the world
+	 * @return {xMin, xMax, yMin, yMax, zMin, zMax}, inclusive
+	 */
+	public int[] chunkBounds(int cx, int cy)
+	{
+		return new int[] {
+				cx * CHUNK_SIZE, Math.min((cx + 1) * CHUNK_SIZE, sizeX) - 1,
+				cy * CHUNK_SIZE, Math.min((cy + 1) * CHUNK_SIZE, sizeY) - 1,
+				0, sizeZ - 1};
+	}
+	
+	/**
+	 * Round a light value to the nearest quantization step, clamped to the range of a short
+	 */
+	public static short quantize(float value)
+	{
+		int q = Math.round(value * STEPS_PER_UNIT);
+		return (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, q));
+	}
+	
+	public static float dequantize(short value)
+	{
+		return value / (float)STEPS_PER_UNIT;
+	}
+	
+	public int getChunksX()
+	{
+		return chunksX;
+	}
+	
+	public int getChunksY()
+	{
+		return chunksY;
+	}
+	
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+	
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+	
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+}
@@ -0,0 +1,54 @@
+package world;
+
+import things.Thing;
+
+/**
+ * What a light source is doing at the end of a simulation tick: the cell it shines from, its power, and whether it
+ * is moving.  Views are captured with each snapshot and never change afterwards, so the light engine can read
+ * them while the thing itself is being updated.
+ */
+public final class LightView {
+	private final Thing light;	//the light source, identifies the light from one snapshot to the next
+	private final int x, y, z;
+	private final float power;
+	private final boolean stationary;
+	
+	/**
+	 * Capture a light source, must be called from the thread running the simulation
+	 * @param light the light source
+	 */
+	LightView(Thing light)
+	{
+		this.light = light;
+		Position pos = light.getPos();
+		x = pos.x;
+		y = pos.y;
+		z = pos.z;
+		power = light.getLightPower();
+		stationary = light.isStationary();
+	}
+	
+	public Thing getLight() {
+		return light;
+	}
+	
+	public int getX() {
+		return x;
+	}
+	
+	public int getY() {
+		return y;
+	}
+	
+	public int getZ() {
+		return z;
+	}
+	
+	public float getPower() {
+		return power;
+	}
+	
+	public boolean isStationary() {
+		return stationary;
+	}
+}
@@ -0,0 +1,132 @@
+package world;
+
+/**
+ * The cells a light source reaches and their distances from it, independent of the light's intensity.  A light
+ * whose power flickers keeps its visibility and only has the falloff reapplied; the visibility is recomputed
+ * when the light moves or an occluder within its radius changes.
+ * 
+ * Cells are marked in a scratch cube while the visibility is being computed, then packed into runs of
+ * consecutive z levels so the falloff can be applied a row at a time along the grid's innermost axis.
+ */
+public class LightVisibility {
+	//distances for every squared distance a light of radius MAX_TABLE_RADIUS or less can reach
+	private static final int MAX_TABLE_RADIUS = 32;
+	private static final float[] DISTANCES = new float[3 * MAX_TABLE_RADIUS * MAX_TABLE_RADIUS + 1];
+	static
+	{
+		for (int n = 0; n < DISTANCES.length; n ++)
+		{
+			DISTANCES[n] = (float)Math.sqrt(n);
+		}
+	}
+	
+	int radius;	//radius the visibility was computed for
+	int count;	//number of cells reached
+	
+	//runs of reached cells, each covering runLength consecutive z levels starting at runZ
+	int runCount;
+	int[] runX;
+	int[] runY;
+	int[] runZ;
+	int[] runLength;
+	int[] runStart;	//index of the run's first distance
+	float[] dist;
+	
+	//scratch cube covering the light's bounds while the visibility is being built, -1 for cells not reached
+	private int[] bounds;
+	private float[] reached;
+	
+	/**
+	 * Constructor
+	 * @param radius radius the visibility is being computed for
+	 * @param bounds {xMin, xMax, yMin, yMax, zMin, zMax} of the cells the light can reach
+	 */
+	public LightVisibility(int radius, int[] bounds)
+	{
+		this.radius = radius;
+		this.bounds = bounds;
+		int size = Math.max(0, bounds[1] - bounds[0] + 1) * Math.max(0, bounds[3] - bounds[2] + 1) * Math.max(0, bounds[5] - bounds[4] + 1);
+		reached = new float[size];
+		for (int n = 0; n < size; n ++)
+		{
+			reached[n] = -1;
+		}
+	}
+	
+	/**
+	 * Get the distance between two cells from the lookup table, matching Math.sqrt of the squared distance
+	 */
+	public static float distance(int dx, int dy, int dz)
+	{
+		int squared = dx * dx + dy * dy + dz * dz;
+		if (squared < DISTANCES.length)
+			return DISTANCES[squared];
+		return (float)Math.sqrt(squared);
+	}
+	
+	/**
+	 * Add a reached cell
+	 * @param i grid location
+	 * @param j grid location
+	 * @param k grid location
+	 * @param d distance from the light source
+	 */
+	public void add(int i, int j, int k, float d)
+	{
+		int n = ((i - bounds[0]) * (bounds[3] - bounds[2] + 1) + (j - bounds[2])) * (bounds[5] - bounds[4] + 1) + (k - bounds[4]);
+		if (reached[n] < 0)
+			count ++;
+		reached[n] = d;
+	}
+	
+	/**
+	 * Pack the reached cells into runs and release the scratch cube.  Must be called once every cell has been
+	 * added.
+	 */
+	public void finish()
+	{
+		int sizeY = bounds[3] - bounds[2] + 1;
+		int sizeZ = bounds[5] - bounds[4] + 1;
+		
+		//a column with every other cell reached has the most runs, half its height rounded up
+		int maxRuns = Math.min(count, reached.length / Math.max(sizeZ, 1) * ((sizeZ + 1) / 2));
+		runX = new int[maxRuns];
+		runY = new int[maxRuns];
+		runZ = new int[maxRuns];
+		runLength = new int[maxRuns];
+		runStart = new int[maxRuns];
+		dist = new float[count];
+		
+		int d = 0;
+		for (int n = 0; n < reached.length; n ++)
+		{
+			if (reached[n] < 0)
+				continue;
+			
+			int k = n % sizeZ;
+			if (k == 0 || reached[n - 1] < 0)
+			{
+				runX[runCount] = n / (sizeY * sizeZ) + bounds[0];
+				runY[runCount] = (n / sizeZ) % sizeY + bounds[2];
+				runZ[runCount] = k + bounds[4];
+				runStart[runCount] = d;
+				runCount ++;
+			}
+			runLength[runCount - 1] ++;
+			dist[d ++] = reached[n];
+		}
+		
+		reached = null;
+		bounds = null;
+	}
+	
+	public int getRadius()
+	{
+		return radius;
+	}
+	
+	public int getCount()
+	{
+		return count;
+	}
+}
@@ -0,0 +1,192 @@
+package world;
+
+import java.util.Arrays;
+
+import utils.display.DecodedImage;
+
+/**
+ * Which cells in the rendered range can't show on screen because opaque tiles are drawn over them later in the
+ * frame.  A cell's terrain is drawn in its own screen tile at column i and row j + k, and cells sharing a screen
+ * tile are drawn back to front: lower layers first, and rows further back first within a layer.  So a cell is
+ * hidden once a later cell in the same screen tile draws a fully opaque tile, either the face of solid terrain
+ * below the highest layer or the top of the terrain under an air cell.  Things and agents reach into the tiles
+ * around their own, and are only hidden when every tile they can reach is covered later.
+ * 
+ * The map is kept between frames and only rebuilt when the rendered range or highest layer changes or terrain
+ * is replaced.  Building and queries happen on the GL thread; terrainChanged can be called from the simulation.
+ */
+public class OcclusionMap {
+	private World world;
+	private boolean[] opaqueVTiles;	//[packed tile], true if the vertical sheet tile has no transparent pixels
+	private boolean[] opaqueHTiles;	//same for the horizontal sheet
+	
+	private volatile boolean stale = true;	//true if terrain changed since the map was built
+	private int iMin, iMax, jMin, jMax, kMax;	//range the map was built for
+	private int rows;	//screen rows in the range, jMin to jMax + kMax
+	private int[] cover = new int[0];	//[(i - iMin) * rows + r - jMin], draw order of the last opaque tile over a screen tile, -1 if none
+	
+	/**
+	 * Constructor, nothing is hidden until the tile sheets are set
+	 * @param world the world to cull
+	 */
+	public OcclusionMap(World world)
+	{
+		this.world = world;
+	}
+	
+	/**
+	 * Find the fully opaque tiles of the terrain sheets, only tiles found opaque here hide what is under them
+	 * @param vSheet pixels of the vertical texture sheet
+	 * @param hSheet pixels of the horizontal texture sheet
+	 * @param tileSize width and height of a tile in the sheets
+	 */
+	public void setTileSheets(DecodedImage vSheet, DecodedImage hSheet, int tileSize)
+	{
+		opaqueVTiles = findOpaqueTiles(vSheet, tileSize);
+		opaqueHTiles = findOpaqueTiles(hSheet, tileSize);
+		stale = true;
+	}
+	
+	private boolean[] findOpaqueTiles(DecodedImage sheet, int tileSize)
+	{
+		int cols = sheet.getWidth() / tileSize;
+		int rowCount = sheet.getHeight() / tileSize;
+		boolean[] opaque = new boolean[World.packTile(cols, 0)];
+		for (int col = 0; col < cols; col ++)
+		{
+			for (int row = 0; row < rowCount; row ++)
+			{
+				opaque[World.packTile(col, row)] = sheet.isOpaque(col * tileSize, row * tileSize, tileSize, tileSize);
+			}
+		}
+		return opaque;
+	}
+	
+	/**
+	 * Rebuild the map on its next update, used when terrain changes
+	 */
+	public void terrainChanged()
+	{
+		stale = true;
+	}
+	
+	/**
+	 * Bring the map up to date for the range about to be rendered
+	 * 
+	 * @param iMin minimum x coordinate
+	 * @param iMax maximum x coordinate
+	 * @param jMin minimum y coordinate
+	 * @param jMax maximum y coordinate
+	 * @param kMax highest layer being rendered
+	 */
+	public void update(int iMin, int iMax, int jMin, int jMax, int kMax)
+	{
+		if (!stale && iMin == this.iMin && iMax == this.iMax && jMin == this.jMin && jMax == this.jMax && kMax == this.kMax)
+			return;
+		
+		//cleared first, so terrain changing during the build leaves the map stale for the next frame
+		stale = false;
+		this.iMin = iMin;
+		this.iMax = iMax;
+		this.jMin = jMin;
+		this.jMax = jMax;
+		this.kMax = kMax;
+		rows = jMax + kMax - jMin + 1;
+		int size = (iMax - iMin + 1) * rows;
+		if (cover.length < size)
+			cover = new int[size];
+		Arrays.fill(cover, 0, size, -1);
+		
+		if (opaqueVTiles == null)
+			return;
+		
+		//cells are visited in draw order, so each screen tile ends up with the last opaque tile drawn over it
+		for (int k = 0; k <= kMax; k ++)
+		{
+			for (int j = jMax; j >= jMin; j --)
+			{
+				int order = order(j, k);
+				for (int i = iMin; i <= iMax; i ++)
+				{
+					if (isOpaque(i, j, k))
+						cover[(i - iMin) * rows + j + k - jMin] = order;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Determine whether a cell's terrain covers its whole screen tile with opaque pixels.  Faces in the highest
+	 * layer are either blacked out or drawn partly transparent, so only faces below it count.
+	 */
+	private boolean isOpaque(int i, int j, int k)
+	{
+		Terrain t = world.terrainGrid[i][j][k];
+		if (t.getTerrainType() != Terrain.terrainType.air)
+			return k < kMax && isOpaqueTile(opaqueVTiles, world.verticalTile(i, j, k));
+		else
+			return world.hasTop(i, j, k) && isOpaqueTile(opaqueHTiles, world.topTile(i, j, k));
+	}
+	
+	private boolean isOpaqueTile(boolean[] opaqueTiles, int tile)
+	{
+		return tile < opaqueTiles.length && opaqueTiles[tile];
+	}
+	
+	/**
+	 * @return position of a row in the order the frame is drawn, higher is drawn later
+	 */
+	private int order(int j, int k)
+	{
+		return k * (jMax - jMin + 1) + jMax - j;
+	}
+	
+	/**
+	 * @return true if an opaque tile is drawn over a screen tile after the cells of a row
+	 */
+	private boolean isCoveredAfter(int i, int r, int order)
+	{
+		if (i < iMin || i > iMax || r < jMin || r >= jMin + rows)
+			return false;
+		return cover[(i - iMin) * rows + r - jMin] > order;
+	}
+	
+	/**
+	 * @return true if nothing of a cell's terrain shows on screen
+	 */
+	public boolean isTerrainHidden(int i, int j, int k)
+	{
+		return isCoveredAfter(i, j + k, order(j, k));
+	}
+	
+	/**
+	 * @return true if none of a row's terrain between two columns shows on screen
+	 */
+	public boolean isTerrainRowHidden(int iLow, int iHigh, int j, int k)
+	{
+		int order = order(j, k);
+		for (int i = iLow; i <= iHigh; i ++)
+		{
+			if (!isCoveredAfter(i, j + k, order))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return true if nothing of the things and agents drawn in a cell shows on screen
+	 */
+	public boolean isSpriteHidden(int i, int j, int k)
+	{
+		int order = order(j, k);
+		for (int x = i - SceneCache.REACH_LEFT; x <= i + SceneCache.REACH_RIGHT; x ++)
+		{
+			for (int r = j + k - SceneCache.REACH_DOWN; r <= j + k + SceneCache.REACH_UP; r ++)
+			{
+				if (!isCoveredAfter(x, r, order))
+					return false;
+			}
+		}
+		return true;
+	}
+}
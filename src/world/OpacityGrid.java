@@ -0,0 +1,136 @@
+package world;
+
+/**
+ * Packed bitsets of which grid cells block light, one bit per cell.  One set covers everything that blocks
+ * light (agents, things and terrain), another covers terrain alone for sun shadows, and a third marks non-air
+ * terrain for deciding which faces of a blocking cell are lit.  World keeps them up to date as agents, things
+ * and terrain change, so raycasts and shadow walks read a single word per cell.
+ */
+public class OpacityGrid {
+	private int sizeX;
+	private int sizeY;
+	private int sizeZ;
+	private long[] lightBlocking;
+	private long[] terrainOpaque;
+	private long[] terrainBlocking;
+	
+	/**
+	 * Constructor, every cell starts out transparent
+	 * 
+	 * @param xSize world length
+	 * @param ySize world width
+	 * @param zSize world height
+	 */
+	public OpacityGrid(int xSize, int ySize, int zSize)
+	{
+		sizeX = xSize;
+		sizeY = ySize;
+		sizeZ = zSize;
+		int words = (xSize * ySize * zSize + 63) / 64;
+		lightBlocking = new long[words];
+		terrainOpaque = new long[words];
+		terrainBlocking = new long[words];
+	}
+	
+	/**
+	 * Copy constructor, used to give the background light solver a consistent view of the occluders
+	 * @param other the grid to copy
+	 */
+	public OpacityGrid(OpacityGrid other)
+	{
+		sizeX = other.sizeX;
+		sizeY = other.sizeY;
+		sizeZ = other.sizeZ;
+		lightBlocking = other.lightBlocking.clone();
+		terrainOpaque = other.terrainOpaque.clone();
+		terrainBlocking = other.terrainBlocking.clone();
+	}
+	
+	/**
+	 * Get the linear index of a cell, z varies fastest so that columns are contiguous
+	 */
+	public int index(int x, int y, int z)
+	{
+		return (x * sizeY + y) * sizeZ + z;
+	}
+	
+	/**
+	 * @return true if an agent, thing, or terrain in the cell blocks light
+	 */
+	public boolean isLightBlocking(int x, int y, int z)
+	{
+		int n = index(x, y, z);
+		return (lightBlocking[n >> 6] & (1L << (n & 63))) != 0;
+	}
+	
+	/**
+	 * @return true if the terrain in the cell blocks light
+	 */
+	public boolean isTerrainOpaque(int x, int y, int z)
+	{
+		int n = index(x, y, z);
+		return (terrainOpaque[n >> 6] & (1L << (n & 63))) != 0;
+	}
+	
+	/**
+	 * @return true if the terrain in the cell is anything other than air
+	 */
+	public boolean isTerrainBlocking(int x, int y, int z)
+	{
+		int n = index(x, y, z);
+		return (terrainBlocking[n >> 6] & (1L << (n & 63))) != 0;
+	}
+	
+	/**
+	 * Set whether a cell blocks light
+	 * @return true if the value changed
+	 */
+	public boolean setLightBlocking(int x, int y, int z, boolean blocking)
+	{
+		return set(lightBlocking, index(x, y, z), blocking);
+	}
+	
+	/**
+	 * Set whether the terrain in a cell blocks light
+	 * @return true if the value changed
+	 */
+	public boolean setTerrainOpaque(int x, int y, int z, boolean opaque)
+	{
+		return set(terrainOpaque, index(x, y, z), opaque);
+	}
+	
+	/**
+	 * Set whether the terrain in a cell is anything other than air
+	 * @return true if the value changed
+	 */
+	public boolean setTerrainBlocking(int x, int y, int z, boolean blocking)
+	{
+		return set(terrainBlocking, index(x, y, z), blocking);
+	}
+	
+	private boolean set(long[] bits, int n, boolean value)
+	{
+		long mask = 1L << (n & 63);
+		boolean old = (bits[n >> 6] & mask) != 0;
+		if (value)
+			bits[n >> 6] |= mask;
+		else
+			bits[n >> 6] &= ~mask;
+		return old != value;
+	}
+	
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+	
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+	
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+}
@@ -0,0 +1,462 @@
+package world;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import utils.display.Renderer;
+import utils.display.Renderer.renderPhase;
+import world.World.timeOfDay;
+
+/**
+ * The rendered scene kept in an offscreen framebuffer between frames.  Each frame only the screen regions
+ * around cells that could look different are cleared and drawn again: cells whose light changed, cells holding
+ * agents or animated things (this frame and last), and cells whose things were added, removed, or moved.  The
+ * framebuffer is then drawn to the screen as one quad.
+ * 
+ * Camera movement of less than a tile scrolls the cached image into a second framebuffer and redraws the
+ * exposed edges.  Anything that changes how the whole view is drawn (a move of a tile or more, a change in the
+ * visible cell range or highest layer, the time of day, or terrain) falls back to drawing the whole scene.
+ * 
+ * All drawing goes through the world's renderer.  Drawing happens on the GL thread; invalidate and cellChanged
+ * can be called from the simulation while it runs.
+ */
+public class SceneCache {
+	//how far a cell's terrain and sprites can reach from its tile, in tiles; sprites are a tile and a half wide
+	//and two tiles high, and agents can be offset up to a tile in any direction
+	static final int REACH_LEFT = 2;
+	static final int REACH_RIGHT = 2;
+	static final int REACH_DOWN = 2;
+	static final int REACH_UP = 3;
+	
+	private World world;
+	private int screenWidth;
+	private int screenHeight;
+	private int tileSize;	//width and height of a tile on screen
+	private int tileCols;	//screen tiles across, for the dirty mask
+	private int tileRows;
+	private int textureSize;	//framebuffer texture width and height, a power of two covering the screen
+	
+	private boolean supported = true;
+	private int[] framebuffers;
+	private int current;	//framebuffer holding the last frame
+	
+	private boolean valid;	//false until the whole scene has been drawn into the framebuffers
+	private final AtomicInteger invalidations = new AtomicInteger();	//bumped whenever the whole scene has to be drawn again
+	private int drawnInvalidations;	//invalidations when the whole scene was last drawn
+	private volatile boolean tracking;	//true while frames are drawn through the cache, cell changes are ignored otherwise
+	private int lastOriginX;
+	private int lastOriginY;
+	private int[] lastRange = new int[5];	//iMin, iMax, jMin, jMax, kMax
+	private timeOfDay lastTod;
+	
+	private boolean[] dirty;	//[row * tileCols + col], screen tiles to redraw this frame
+	private float[] drawnLight;	//[(i * sizeY + j) * sizeZ + k], light each cell was last drawn with
+	private int[] spriteCells = new int[64];	//packed cells drawn with agents or animated things last frame
+	private int spriteCellCount;
+	private final ConcurrentLinkedQueue<Integer> changedCells = new ConcurrentLinkedQueue<Integer>();	//packed cells whose things changed since the last frame
+	
+	private int sizeY;
+	private int sizeZ;
+	
+	//stats for the last frame
+	private boolean lastFull;
+	private int lastRegions;
+	private int lastTiles;
+	
+	/**
+	 * Constructor, the framebuffers are created when first drawn
+	 * @param world the world whose scene is cached
+	 * @param screenWidth width of the screen in pixels
+	 * @param screenHeight height of the screen in pixels
+	 * @param tileSize width and height of a tile on screen
+	 */
+	public SceneCache(World world, int screenWidth, int screenHeight, int tileSize)
+	{
+		this.world = world;
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		this.tileSize = tileSize;
+		tileCols = (screenWidth + tileSize - 1) / tileSize;
+		tileRows = (screenHeight + tileSize - 1) / tileSize;
+		dirty = new boolean[tileCols * tileRows];
+		textureSize = 1;
+		while (textureSize < Math.max(screenWidth, screenHeight))
+			textureSize *= 2;
+		sizeY = world.terrainGrid[0].length;
+		sizeZ = world.terrainGrid[0][0].length;
+	}
+	
+	/**
+	 * Draw the whole scene on the next frame
+	 */
+	public void invalidate()
+	{
+		invalidations.incrementAndGet();
+		tracking = false;
+		changedCells.clear();
+	}
+	
+	/**
+	 * Redraw around a cell on the next frame, used when its things change.  Full block things also change how
+	 * the two cells above them are drawn.
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 */
+	public void cellChanged(int x, int y, int z)
+	{
+		//nothing to track until the next full redraw
+		if (!tracking)
+			return;
+		
+		for (int k = z; k <= Math.min(sizeZ - 1, z + 2); k ++)
+		{
+			changedCells.add(pack(x, y, k));
+		}
+	}
+	
+	/**
+	 * Bring the cached scene up to date and draw it to the screen
+	 * 
+	 * @param iMin minimum x coordinate on screen
+	 * @param iMax maximum x coordinate on screen
+	 * @param jMin minimum y coordinate on screen
+	 * @param jMax maximum y coordinate on screen
+	 * @param kMax highest layer being rendered
+	 * @param originX screen x position of cell (0, 0, 0)
+	 * @param originY screen y position of cell (0, 0, 0)
+	 * @return false if framebuffers aren't available, in which case nothing was drawn
+	 */
+	public boolean render(int iMin, int iMax, int jMin, int jMax, int kMax, int originX, int originY)
+	{
+		if (!create())
+			return false;
+		
+		int dx = originX - lastOriginX;
+		int dy = originY - lastOriginY;
+		int generation = invalidations.get();
+		timeOfDay tod = world.frame.getTod();
+		boolean full = !valid || generation != drawnInvalidations || tod != lastTod || Math.abs(dx) >= tileSize || Math.abs(dy) >= tileSize
+				|| iMin != lastRange[0] || iMax != lastRange[1] || jMin != lastRange[2] || jMax != lastRange[3] || kMax != lastRange[4];
+		
+		if (!full && (dx != 0 || dy != 0))
+			scroll(dx, dy);
+		
+		Renderer renderer = world.getRenderer();
+		renderer.bindFramebuffer(framebuffers[current]);
+		
+		//cells drawn with sprites last frame have to be redrawn wherever they are now
+		for (int n = 0; n < spriteCellCount; n ++)
+			markCell(spriteCells[n], originX, originY);
+		spriteCellCount = 0;
+		Integer cell;
+		while ((cell = changedCells.poll()) != null)
+			markCell(cell, originX, originY);
+		scan(iMin, iMax, jMin, jMax, kMax, originX, originY);
+		
+		lastRegions = 0;
+		lastTiles = 0;
+		lastFull = full;
+		if (full)
+		{
+			renderer.clear();
+			world.renderScene(iMin, iMax, jMin, jMax, kMax, jMin, jMax + kMax);
+			for (int n = 0; n < dirty.length; n ++)
+				dirty[n] = false;
+		}
+		else
+		{
+			redrawDirty(iMin, iMax, jMin, jMax, kMax, originX, originY);
+		}
+		
+		renderer.bindFramebuffer(0);
+		renderer.setPhase(renderPhase.cache);
+		drawFramebuffer(framebuffers[current], 0, 0);
+		
+		valid = true;
+		drawnInvalidations = generation;
+		tracking = true;
+		lastOriginX = originX;
+		lastOriginY = originY;
+		lastRange[0] = iMin;
+		lastRange[1] = iMax;
+		lastRange[2] = jMin;
+		lastRange[3] = jMax;
+		lastRange[4] = kMax;
+		lastTod = tod;
+		return true;
+	}
+	
+	/**
+	 * Release the framebuffers and their textures
+	 */
+	public void release()
+	{
+		if (framebuffers != null)
+		{
+			for (int n = 0; n < 2; n ++)
+			{
+				if (framebuffers[n] != 0)
+					world.getRenderer().deleteFramebuffer(framebuffers[n]);
+			}
+			framebuffers = null;
+		}
+		valid = false;
+		tracking = false;
+	}
+	
+	/**
+	 * Create the framebuffers if they haven't been yet
+	 * @return true if the framebuffers are usable
+	 */
+	private boolean create()
+	{
+		if (framebuffers != null)
+			return true;
+		if (!supported)
+			return false;
+		Renderer renderer = world.getRenderer();
+		if (!renderer.supportsFramebuffers())
+		{
+			System.out.println("Framebuffer objects not supported, drawing the scene directly");
+			supported = false;
+			return false;
+		}
+		
+		framebuffers = new int[2];
+		for (int n = 0; n < 2; n ++)
+		{
+			framebuffers[n] = renderer.createFramebuffer(textureSize, textureSize);
+			if (framebuffers[n] == 0)
+			{
+				System.out.println("Incomplete framebuffer, drawing the scene directly");
+				release();
+				supported = false;
+				return false;
+			}
+		}
+		valid = false;
+		return true;
+	}
+	
+	/**
+	 * Copy the last frame into the other framebuffer, moved by the camera's change, and mark the uncovered
+	 * edges for redrawing
+	 * 
+	 * @param dx change in the screen position of the world
+	 * @param dy change in the screen position of the world
+	 */
+	private void scroll(int dx, int dy)
+	{
+		int next = 1 - current;
+		Renderer renderer = world.getRenderer();
+		renderer.bindFramebuffer(framebuffers[next]);
+		renderer.clear();
+		drawFramebuffer(framebuffers[current], dx, dy);
+		current = next;
+		
+		if (dx > 0)
+			markRect(0, 0, dx, screenHeight);
+		else if (dx < 0)
+			markRect(screenWidth + dx, 0, screenWidth, screenHeight);
+		if (dy > 0)
+			markRect(0, 0, screenWidth, dy);
+		else if (dy < 0)
+			markRect(0, screenHeight + dy, screenWidth, screenHeight);
+	}
+	
+	/**
+	 * Compare the visible cells against how they were last drawn, marking cells whose light changed and
+	 * remembering cells with agents or animated things
+	 */
+	private void scan(int iMin, int iMax, int jMin, int jMax, int kMax, int originX, int originY)
+	{
+		if (drawnLight == null)
+			drawnLight = new float[world.terrainGrid.length * sizeY * sizeZ];
+		
+		//overhangs and hanging bottoms are lit from the layer above the cell they're drawn in
+		int kLight = Math.min(sizeZ - 1, kMax + 1);
+		for (int i = iMin; i <= iMax; i ++)
+		{
+			for (int j = jMin; j <= jMax; j ++)
+			{
+				for (int k = 0; k <= kLight; k ++)
+				{
+					int index = (i * sizeY + j) * sizeZ + k;
+					float light = world.lightModGrid.get(i, j, k);
+					if (light != drawnLight[index])
+					{
+						drawnLight[index] = light;
+						markCell(pack(i, j, k), originX, originY);
+					}
+					if (k <= kMax && (world.frame.hasAgentAt(i, j, k) || world.frame.hasAnimatedThingAt(i, j, k)))
+					{
+						if (spriteCellCount == spriteCells.length)
+						{
+							int[] grown = new int[spriteCells.length * 2];
+							System.arraycopy(spriteCells, 0, grown, 0, spriteCellCount);
+							spriteCells = grown;
+						}
+						spriteCells[spriteCellCount ++] = pack(i, j, k);
+						markCell(pack(i, j, k), originX, originY);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Clear and redraw the marked screen tiles, merged into rectangles of whole runs of tiles
+	 */
+	private void redrawDirty(int iMin, int iMax, int jMin, int jMax, int kMax, int originX, int originY)
+	{
+		Renderer renderer = world.getRenderer();
+		for (int row = 0; row < tileRows; row ++)
+		{
+			int col = 0;
+			while (col < tileCols)
+			{
+				if (!dirty[row * tileCols + col])
+				{
+					col ++;
+					continue;
+				}
+				int colEnd = col;
+				while (colEnd < tileCols && dirty[row * tileCols + colEnd])
+					colEnd ++;
+				
+				//extend the run down the screen while the rows below have it marked too
+				int rowEnd = row + 1;
+				while (rowEnd < tileRows && isRunDirty(rowEnd, col, colEnd))
+					rowEnd ++;
+				for (int r = row; r < rowEnd; r ++)
+				{
+					for (int c = col; c < colEnd; c ++)
+						dirty[r * tileCols + c] = false;
+				}
+				
+				int x0 = col * tileSize;
+				int y0 = row * tileSize;
+				int x1 = Math.min(screenWidth, colEnd * tileSize);
+				int y1 = Math.min(screenHeight, rowEnd * tileSize);
+				renderer.enableScissor(x0, y0, x1 - x0, y1 - y0);
+				renderer.clear();
+				
+				//every cell whose terrain or sprites could reach into the rectangle
+				int iLow = Math.max(iMin, floorDiv(x0 - originX, tileSize) - REACH_RIGHT);
+				int iHigh = Math.min(iMax, floorDiv(x1 - 1 - originX, tileSize) + REACH_LEFT);
+				int rowLow = floorDiv(y0 - originY, tileSize) - REACH_UP;
+				int rowHigh = floorDiv(y1 - 1 - originY, tileSize) + REACH_DOWN;
+				if (iLow <= iHigh)
+					world.renderScene(iLow, iHigh, jMin, jMax, kMax, rowLow, rowHigh);
+				
+				renderer.disableScissor();
+				
+				lastRegions ++;
+				lastTiles += (colEnd - col) * (rowEnd - row);
+				col = colEnd;
+			}
+		}
+	}
+	
+	private boolean isRunDirty(int row, int colStart, int colEnd)
+	{
+		for (int c = colStart; c < colEnd; c ++)
+		{
+			if (!dirty[row * tileCols + c])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Mark the screen tiles a cell's terrain and sprites could cover
+	 */
+	private void markCell(int cell, int originX, int originY)
+	{
+		int x = originX + tileSize * unpackX(cell);
+		int y = originY + tileSize * (unpackY(cell) + unpackZ(cell));
+		markRect(x - REACH_LEFT * tileSize, y - REACH_DOWN * tileSize, x + (REACH_RIGHT + 1) * tileSize, y + (REACH_UP + 1) * tileSize);
+	}
+	
+	/**
+	 * Mark the screen tiles overlapping a rectangle of screen pixels
+	 */
+	private void markRect(int x0, int y0, int x1, int y1)
+	{
+		int colMin = Math.max(0, floorDiv(x0, tileSize));
+		int colMax = Math.min(tileCols - 1, floorDiv(x1 - 1, tileSize));
+		int rowMin = Math.max(0, floorDiv(y0, tileSize));
+		int rowMax = Math.min(tileRows - 1, floorDiv(y1 - 1, tileSize));
+		for (int row = rowMin; row <= rowMax; row ++)
+		{
+			for (int col = colMin; col <= colMax; col ++)
+				dirty[row * tileCols + col] = true;
+		}
+	}
+	
+	/**
+	 * Draw a framebuffer's contents over the screen, unblended
+	 */
+	private void drawFramebuffer(int framebuffer, int x, int y)
+	{
+		Renderer renderer = world.getRenderer();
+		renderer.pushMatrix();
+			renderer.translate(x, y);
+			renderer.drawFramebuffer(framebuffer, screenWidth, screenHeight);
+		renderer.popMatrix();
+	}
+	
+	private int pack(int x, int y, int z)
+	{
+		return (x * sizeY + y) * sizeZ + z;
+	}
+	
+	private int unpackX(int cell)
+	{
+		return cell / (sizeY * sizeZ);
+	}
+	
+	private int unpackY(int cell)
+	{
+		return (cell / sizeZ) % sizeY;
+	}
+	
+	private int unpackZ(int cell)
+	{
+		return cell % sizeZ;
+	}
+	
+	private static int floorDiv(int a, int b)
+	{
+		int q = a / b;
+		if ((a % b != 0) && ((a < 0) != (b < 0)))
+			q --;
+		return q;
+	}
+	
+	/**
+	 * @return true if the last frame drew the whole scene
+	 */
+	public boolean wasFullRedraw()
+	{
+		return lastFull;
+	}
+	
+	/**
+	 * @return number of rectangles redrawn last frame, 0 after a full redraw
+	 */
+	public int getRedrawRegions()
+	{
+		return lastRegions;
+	}
+	
+	/**
+	 * @return number of screen tiles redrawn last frame, 0 after a full redraw
+	 */
+	public int getRedrawTiles()
+	{
+		return lastTiles;
+	}
+}
@@ -0,0 +1,220 @@
+package world;
+
+import java.util.Arrays;
+
+import world.World.timeOfDay;
+
+/**
+ * Cache of which grid cells are in the sun's shadow, with one packed bitmap per time of day.  Columns
+ * are computed lazily the first time they are queried for a time of day and are invalidated when terrain
+ * that could cast a shadow onto them is edited.
+ * 
+ * Shadows are cast by the world's render side copy of the occluders, and the map keeps the height of the
+ * topmost opaque terrain in each column of that copy, so it is only used from the render thread.
+ */
+public class ShadowMap {
+	private World world;
+	private int sizeX;
+	private int sizeY;
+	private int sizeZ;
+	private int wordsPerColumn;
+	private long[][] shadowBits;	//[time of day][column * wordsPerColumn + word], one bit per z level
+	private boolean[][] columnValid;	//[time of day][column]
+	private int[] topOpaque;	//[column], z level of the topmost opaque terrain, -1 if there is none
+	
+	/**
+	 * Constructor, nothing is computed until it is first queried
+	 * @param world the world whose terrain casts the shadows
+	 */
+	public ShadowMap(World world)
+	{
+		this.world = world;
+		sizeX = world.terrainGrid.length;
+		sizeY = world.terrainGrid[0].length;
+		sizeZ = world.terrainGrid[0][0].length;
+		wordsPerColumn = (sizeZ + 63) / 64;
+		
+		int todCount = timeOfDay.values().length;
+		shadowBits = new long[todCount][sizeX * sizeY * wordsPerColumn];
+		columnValid = new boolean[todCount][sizeX * sizeY];
+		topOpaque = new int[sizeX * sizeY];
+		Arrays.fill(topOpaque, -1);
+	}
+	
+	/**
+	 * Determine whether a cell is in shadow for a given time of day
+	 * 
+	 * @param tod the time of day
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 * @return true if the cell is shadowed
+	 */
+	public boolean isShadowed(timeOfDay tod, int x, int y, int z)
+	{
+		if (x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ)
+			return castShadow(tod, x, y, z);
+		
+		int t = tod.ordinal();
+		int column = x * sizeY + y;
+		if (!columnValid[t][column])
+			computeColumn(tod, x, y);
+		return (shadowBits[t][column * wordsPerColumn + (z >> 6)] & (1L << (z & 63))) != 0;
+	}
+	
+	/**
+	 * Update the column height and invalidate the shadows that could change after the opacity of a cell's
+	 * terrain changed.  Setting a cell is constant time; clearing the column's top cell scans down it for the next.
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 */
+	public void terrainChanged(int x, int y, int z)
+	{
+		int column = x * sizeY + y;
+		if (world.lightOpacity.isTerrainOpaque(x, y, z))
+			topOpaque[column] = Math.max(topOpaque[column], z);
+		else if (topOpaque[column] == z)
+			topOpaque[column] = scanDown(x, y, z - 1);
+		invalidateColumnsAround(x, y);
+	}
+	
+	/**
+	 * Invalidate every column that could have a shadow cast onto it by terrain in the given column.  Shadows
+	 * are cast along the x axis and one step in the +y direction for long shadows, so this covers the same row
+	 * and the row behind it.
+	 * 
+	 * @param x grid location of the edited terrain
+	 * @param y grid location of the edited terrain
+	 */
+	public void invalidateColumnsAround(int x, int y)
+	{
+		int xMin = Math.max(0, x - sizeZ);
+		int xMax = Math.min(sizeX - 1, x + sizeZ);
+		for (int t = 0; t < columnValid.length; t ++)
+		{
+			for (int i = xMin; i <= xMax; i ++)
+			{
+				for (int j = Math.max(0, y - 1); j <= y && j < sizeY; j ++)
+				{
+					columnValid[t][i * sizeY + j] = false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Recompute every column height and invalidate every column for every time of day, used when terrain is
+	 * replaced wholesale
+	 */
+	public void invalidateAll()
+	{
+		for (int t = 0; t < columnValid.length; t ++)
+		{
+			for (int n = 0; n < columnValid[t].length; n ++)
+			{
+				columnValid[t][n] = false;
+			}
+		}
+		for (int i = 0; i < sizeX; i ++)
+		{
+			for (int j = 0; j < sizeY; j ++)
+			{
+				topOpaque[i * sizeY + j] = scanDown(i, j, sizeZ - 1);
+			}
+		}
+	}
+	
+	private int scanDown(int x, int y, int zStart)
+	{
+		for (int k = zStart; k >= 0; k --)
+		{
+			if (world.lightOpacity.isTerrainOpaque(x, y, k))
+				return k;
+		}
+		return -1;
+	}
+	
+	private void computeColumn(timeOfDay tod, int x, int y)
+	{
+		int t = tod.ordinal();
+		int column = x * sizeY + y;
+		int base = column * wordsPerColumn;
+		for (int w = 0; w < wordsPerColumn; w ++)
+		{
+			shadowBits[t][base + w] = 0;
+		}
+		for (int z = 0; z < sizeZ; z ++)
+		{
+			if (castShadow(tod, x, y, z))
+				shadowBits[t][base + (z >> 6)] |= 1L << (z & 63);
+		}
+		columnValid[t][column] = true;
+	}
+	
+	/**
+	 * Walk up the sun's diagonal from a cell looking for terrain that blocks it
+	 * 
+	 * @param tod the time of day, which determines the shadow direction and length
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 * @return true if the cell is shadowed
+	 */
+	private boolean castShadow(timeOfDay tod, int x, int y, int z)
+	{
+		OpacityGrid opacity = world.lightOpacity;
+		int shadowLength = 1;
+		int shadowDirection = 1;
+		boolean longShadows = false;
+		switch (tod)
+		{
+		case sunrise:
+			longShadows = true;
+			break;
+		case morning:
+			shadowLength = 3;
+			break;
+		case midday:
+			shadowDirection = 0;
+			break;
+		case afternoon:
+			shadowLength = 3;
+			shadowDirection = -1;
+			break;
+		case sunset:
+			shadowDirection = -1;
+			longShadows = true;
+			break;
+		case night:
+			//no shadows
+			return false;
+		default:
+			shadowDirection = 0;
+			break;
+		}
+		
+		//straight down, shadowed by anything at or above the cell in its own column
+		if (shadowDirection == 0 && !longShadows && x >= 0 && x < sizeX && y >= 0 && y < sizeY && z >= 0)
+			return topOpaque[x * sizeY + y] >= z;
+		
+		for (int k = 0; k + z < sizeZ; k ++)
+		{
+			if (k % shadowLength == 0)
+				x += shadowDirection;
+			
+			if (x < 0 || x >= sizeX || y < 0 || y >= sizeY)
+				break;
+			
+			//columns that top out below the walk can't block it
+			if (k + z <= topOpaque[x * sizeY + y] && opacity.isTerrainOpaque(x, y, k + z))
+				return true;
+			
+			if (longShadows && y + 1 < sizeY && k + z <= topOpaque[x * sizeY + y + 1] && opacity.isTerrainOpaque(x, y + 1, k + z))
+				return true;
+		}
+		
+		return false;
+	}
+}
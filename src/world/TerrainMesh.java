@@ -0,0 +1,379 @@
+package world;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.newdawn.slick.opengl.Texture;
+
+import utils.display.Renderer;
+
+/**
+ * Terrain tiles cached in vertex buffers, one per CHUNK_SIZE by CHUNK_SIZE block of columns at each z level.
+ * A chunk's buffer holds interleaved positions and texture coordinates and is only rebuilt when terrain within
+ * one cell of it changes; colors depend on lighting and time of day, so they are recomputed for the rows being
+ * drawn each frame.
+ * 
+ * Tiles within a layer only overlap tiles of the same cell, so each chunk's quads are grouped by the order
+ * those have to be drawn in (faces, then overhangs and tops, then hanging bottoms) and sorted by descending row
+ * within each group.  Any band of rows can then be drawn with one call per group, which lets the world draw
+ * things and agents over their own row before the rows in front of them.
+ * 
+ * Only layers at least two below the highest rendered layer can be drawn from the mesh, since the top two
+ * layers' tiles depend on where the view is cut off.
+ */
+public class TerrainMesh {
+	public static final int CHUNK_SIZE = 16;	//chunk length and width in cells
+	
+	//groups of quads, in the order they are drawn
+	private static final int FACES = 0;	//vertical faces, from the vertical texture sheet
+	private static final int TOPS = 1;	//overhangs and tops, from the horizontal texture sheet
+	private static final int HANGING = 2;	//hanging bottoms, from the vertical texture sheet
+	private static final int GROUPS = 3;
+	
+	private static final int FLOATS_PER_VERTEX = 4;	//x, y, s, t
+	private static final int COLOR_FLOATS_PER_QUAD = 16;	//r, g, b, a for each vertex
+	
+	private World world;
+	private int sizeX;
+	private int sizeY;
+	private int sizeZ;
+	private int chunksY;
+	private int tileSize;	//width and height of a tile on screen
+	private float vTexConv;	//width and height of a tile in the vertical texture sheet
+	private float hTexConv;	//width and height of a tile in the horizontal texture sheet
+	private Layer[] layers;	//[(cx * chunksY + cy) * sizeZ + k], null until first drawn
+	
+	private float cameraX;
+	private float cameraY;
+	private float[] rgb = new float[3];
+	
+	/**
+	 * Cached quads of one chunk at one z level
+	 */
+	private static class Layer
+	{
+		int buffer;	//vertex buffer name, 0 until something is uploaded
+		boolean dirty;
+		int yMax;	//row of the chunk's first quads
+		int rows;
+		int quadCount;
+		int[] groupStart = new int[GROUPS];	//index of each group's first quad
+		int[] rowStart;	//[group * (rows + 1) + r], quads of the group before row yMax - r
+		
+		//cell whose light and shadow color each quad, and whether the sun's shadow applies
+		int[] lightX;
+		int[] lightY;
+		int[] lightZ;
+		boolean[] shadowed;
+		FloatBuffer colors;
+	}
+	
+	/**
+	 * Constructor, no chunks are built until they are drawn
+	 * @param world the world whose terrain is drawn
+	 * @param tileSize width and height of a tile on screen
+	 * @param vTexConv width and height of a tile in the vertical texture sheet's coordinates
+	 * @param hTexConv width and height of a tile in the horizontal texture sheet's coordinates
+	 */
+	public TerrainMesh(World world, int tileSize, float vTexConv, float hTexConv)
+	{
+		this.world = world;
+		this.tileSize = tileSize;
+		this.vTexConv = vTexConv;
+		this.hTexConv = hTexConv;
+		sizeX = world.terrainGrid.length;
+		sizeY = world.terrainGrid[0].length;
+		sizeZ = world.terrainGrid[0][0].length;
+		int chunksX = (sizeX + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunksY = (sizeY + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		layers = new Layer[chunksX * chunksY * sizeZ];
+	}
+	
+	/**
+	 * Set the screen position of cell (0, 0, 0) for this frame
+	 */
+	public void setCamera(int x, int y)
+	{
+		cameraX = x;
+		cameraY = y;
+	}
+	
+	/**
+	 * Mark every built chunk for rebuilding, used when terrain is replaced wholesale
+	 */
+	public void invalidateAll()
+	{
+		for (int n = 0; n < layers.length; n ++)
+		{
+			if (layers[n] != null)
+				layers[n].dirty = true;
+		}
+	}
+	
+	/**
+	 * Mark the chunks whose tiles could depend on a cell for rebuilding.  Tiles choose their textures from
+	 * neighbors up to one cell away on each axis.
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 */
+	public void terrainChanged(int x, int y, int z)
+	{
+		int cxMin = Math.max(0, x - 1) / CHUNK_SIZE;
+		int cxMax = Math.min(sizeX - 1, x + 1) / CHUNK_SIZE;
+		int cyMin = Math.max(0, y - 1) / CHUNK_SIZE;
+		int cyMax = Math.min(sizeY - 1, y + 1) / CHUNK_SIZE;
+		for (int cx = cxMin; cx <= cxMax; cx ++)
+		{
+			for (int cy = cyMin; cy <= cyMax; cy ++)
+			{
+				for (int k = Math.max(0, z - 1); k <= Math.min(sizeZ - 1, z + 1); k ++)
+				{
+					Layer layer = layers[(cx * chunksY + cy) * sizeZ + k];
+					if (layer != null)
+						layer.dirty = true;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Draw the terrain of a band of rows in one layer, building any chunk that is missing or out of date.  The
+	 * layer must be at least two below the highest rendered layer.
+	 * 
+	 * @param k layer to draw
+	 * @param jTop highest row of the band
+	 * @param jBottom lowest row of the band
+	 * @param iMin minimum x coordinate on screen
+	 * @param iMax maximum x coordinate on screen
+	 * @param vTexture vertical texture sheet
+	 * @param hTexture horizontal texture sheet
+	 */
+	public void render(int k, int jTop, int jBottom, int iMin, int iMax, Texture vTexture, Texture hTexture)
+	{
+		int cxMin = iMin / CHUNK_SIZE;
+		int cxMax = iMax / CHUNK_SIZE;
+		int cyMin = jBottom / CHUNK_SIZE;
+		int cyMax = jTop / CHUNK_SIZE;
+		
+		for (int cx = cxMin; cx <= cxMax; cx ++)
+		{
+			for (int cy = cyMin; cy <= cyMax; cy ++)
+			{
+				Layer layer = getLayer(cx, cy, k);
+				if (layer.quadCount > 0)
+					updateColors(layer, jTop, jBottom);
+			}
+		}
+		
+		Renderer renderer = world.getRenderer();
+		renderer.pushMatrix();
+			renderer.translate(cameraX, cameraY);
+			
+			for (int group = 0; group < GROUPS; group ++)
+			{
+				if (group == TOPS)
+					renderer.bindTexture(hTexture);
+				else
+					renderer.bindTexture(vTexture);
+				
+				for (int cx = cxMin; cx <= cxMax; cx ++)
+				{
+					for (int cy = cyMin; cy <= cyMax; cy ++)
+					{
+						Layer layer = layers[(cx * chunksY + cy) * sizeZ + k];
+						int first = firstQuad(layer, group, jTop);
+						int last = firstQuad(layer, group, jBottom - 1);
+						if (first == last)
+							continue;
+						
+						renderer.drawBuffer(layer.buffer, layer.colors, first, last - first);
+					}
+				}
+			}
+		renderer.popMatrix();
+	}
+	
+	/**
+	 * Get a chunk's layer, building it if it has never been built or its terrain has changed
+	 */
+	private Layer getLayer(int cx, int cy, int k)
+	{
+		int n = (cx * chunksY + cy) * sizeZ + k;
+		if (layers[n] == null)
+		{
+			layers[n] = new Layer();
+			build(layers[n], cx, cy, k);
+		}
+		else if (layers[n].dirty)
+		{
+			build(layers[n], cx, cy, k);
+		}
+		return layers[n];
+	}
+	
+	/**
+	 * Index of the first quad of a group at or below a row
+	 */
+	private int firstQuad(Layer layer, int group, int j)
+	{
+		int r = Math.max(0, Math.min(layer.rows, layer.yMax - j));
+		return layer.groupStart[group] + layer.rowStart[group * (layer.rows + 1) + r];
+	}
+	
+	/**
+	 * Choose the tiles of every cell in a chunk's layer and upload their quads
+	 */
+	private void build(Layer layer, int cx, int cy, int k)
+	{
+		int xMin = cx * CHUNK_SIZE;
+		int xMax = Math.min((cx + 1) * CHUNK_SIZE, sizeX) - 1;
+		int yMin = cy * CHUNK_SIZE;
+		int yMax = Math.min((cy + 1) * CHUNK_SIZE, sizeY) - 1;
+		int rows = yMax - yMin + 1;
+		int cells = (xMax - xMin + 1) * rows;
+		
+		//every cell has at most one quad in each group
+		int[] counts = new int[GROUPS];
+		int[][] cellX = new int[GROUPS][cells];
+		int[][] cellY = new int[GROUPS][cells];
+		int[][] tiles = new int[GROUPS][cells];
+		int[][] lightZ = new int[GROUPS][cells];
+		boolean[][] shadowed = new boolean[GROUPS][cells];
+		int[] rowStart = new int[GROUPS * (rows + 1)];
+		
+		for (int j = yMax; j >= yMin; j --)
+		{
+			for (int group = 0; group < GROUPS; group ++)
+			{
+				rowStart[group * (rows + 1) + yMax - j] = counts[group];
+			}
+			
+			for (int i = xMin; i <= xMax; i ++)
+			{
+				//k + 2 stands in for kMax, the tiles are the same for any kMax at least that high
+				int group;
+				if (world.terrainGrid[i][j][k].getTerrainType() != Terrain.terrainType.air)
+				{
+					group = FACES;
+					cellX[group][counts[group]] = i;
+					cellY[group][counts[group]] = j;
+					tiles[group][counts[group]] = world.verticalTile(i, j, k);
+					lightZ[group][counts[group]] = k;
+					shadowed[group][counts[group]] = false;
+					counts[group] ++;
+					
+					if (world.hasOverhang(i, j, k, k + 2))
+					{
+						group = TOPS;
+						cellX[group][counts[group]] = i;
+						cellY[group][counts[group]] = j;
+						tiles[group][counts[group]] = world.overhangTile(i, j, k);
+						lightZ[group][counts[group]] = k + 1;
+						shadowed[group][counts[group]] = true;
+						counts[group] ++;
+					}
+				}
+				else if (world.hasTop(i, j, k))
+				{
+					group = TOPS;
+					cellX[group][counts[group]] = i;
+					cellY[group][counts[group]] = j;
+					tiles[group][counts[group]] = world.topTile(i, j, k);
+					lightZ[group][counts[group]] = k;
+					shadowed[group][counts[group]] = true;
+					counts[group] ++;
+				}
+				
+				if (world.hasHangingBottom(i, j, k, k + 2))
+				{
+					group = HANGING;
+					cellX[group][counts[group]] = i;
+					cellY[group][counts[group]] = j;
+					tiles[group][counts[group]] = world.hangingTile(i, j, k);
+					lightZ[group][counts[group]] = k + 1;
+					shadowed[group][counts[group]] = false;
+					counts[group] ++;
+				}
+			}
+		}
+		for (int group = 0; group < GROUPS; group ++)
+		{
+			rowStart[group * (rows + 1) + rows] = counts[group];
+		}
+		
+		int quadCount = counts[FACES] + counts[TOPS] + counts[HANGING];
+		layer.yMax = yMax;
+		layer.rows = rows;
+		layer.rowStart = rowStart;
+		layer.quadCount = quadCount;
+		layer.lightX = new int[quadCount];
+		layer.lightY = new int[quadCount];
+		layer.lightZ = new int[quadCount];
+		layer.shadowed = new boolean[quadCount];
+		layer.dirty = false;
+		
+		FloatBuffer vertices = BufferUtils.createFloatBuffer(Math.max(1, quadCount * 4 * FLOATS_PER_VERTEX));
+		int q = 0;
+		for (int group = 0; group < GROUPS; group ++)
+		{
+			layer.groupStart[group] = q;
+			float tConv = group == TOPS ? hTexConv : vTexConv;
+			for (int n = 0; n < counts[group]; n ++)
+			{
+				layer.lightX[q] = cellX[group][n];
+				layer.lightY[q] = cellY[group][n];
+				layer.lightZ[q] = lightZ[group][n];
+				layer.shadowed[q] = shadowed[group][n];
+				q ++;
+				
+				int texX = World.tileCol(tiles[group][n]);
+				int texY = World.tileRow(tiles[group][n]);
+				float x = tileSize * cellX[group][n];
+				float y = tileSize * (cellY[group][n] + k);
+				vertices.put(x).put(y).put(texX * tConv).put(texY*tConv + tConv);
+				vertices.put(x + tileSize).put(y).put(texX*tConv + tConv).put(texY*tConv + tConv);
+				vertices.put(x + tileSize).put(y + tileSize).put(texX*tConv + tConv).put(texY * tConv);
+				vertices.put(x).put(y + tileSize).put(texX*tConv).put(texY * tConv);
+			}
+		}
+		vertices.flip();
+		
+		if (quadCount == 0)
+			return;
+		if (layer.buffer == 0)
+			layer.buffer = world.getRenderer().createBuffer(vertices);
+		else
+			world.getRenderer().updateBuffer(layer.buffer, vertices);
+		
+		if (layer.colors == null || layer.colors.capacity() < quadCount * COLOR_FLOATS_PER_QUAD)
+			layer.colors = BufferUtils.createFloatBuffer(quadCount * COLOR_FLOATS_PER_QUAD);
+	}
+	
+	/**
+	 * Recompute the colors of a chunk's quads in a band of rows from the current lighting
+	 */
+	private void updateColors(Layer layer, int jTop, int jBottom)
+	{
+		for (int group = 0; group < GROUPS; group ++)
+		{
+			int last = firstQuad(layer, group, jBottom - 1);
+			for (int q = firstQuad(layer, group, jTop); q < last; q ++)
+			{
+				int x = layer.lightX[q];
+				int y = layer.lightY[q];
+				int z = layer.lightZ[q];
+				world.computeLighting(layer.shadowed[q] && world.isShadowed(x, y, z), world.lightModGrid.get(x, y, z), rgb);
+				int base = q * COLOR_FLOATS_PER_QUAD;
+				for (int v = 0; v < 4; v ++)
+				{
+					layer.colors.put(base + 4 * v, rgb[0]);
+					layer.colors.put(base + 4 * v + 1, rgb[1]);
+					layer.colors.put(base + 4 * v + 2, rgb[2]);
+					layer.colors.put(base + 4 * v + 3, 1.0f);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * Resolved texture sheet tiles for every cell, so the neighbor checks that choose how a cell's faces blend are
+ * only done once per change to the terrain around it.  Tiles are resolved lazily the first time they are drawn;
+ * World invalidates a cell and its neighbors whenever a cell's terrain is replaced.
+ */
+public class TileCache {
+	public static final short UNRESOLVED = -1;
+	
+	//faces of a cell with their own tile
+	public static final int VERTICAL = 0;	//the cell's vertical face
+	public static final int TOP = 1;	//the cell's horizontal face, drawn in the cell above
+	public static final int OVERHANG = 2;	//the edge of the cell's top hanging over the cell in front of it
+	public static final int BOTTOM = 3;	//the cell's bottom edge, drawn hanging into the cell below
+	private static final int FACES = 4;
+	
+	private int sizeX;
+	private int sizeY;
+	private int sizeZ;
+	private short[] tiles;	//[((x * sizeY + y) * sizeZ + z) * FACES + face], packed as in World.packTile
+	
+	/**
+	 * Constructor, every tile starts out unresolved
+	 * 
+	 * @param xSize world length
+	 * @param ySize world width
+	 * @param zSize world height
+	 */
+	public TileCache(int xSize, int ySize, int zSize)
+	{
+		sizeX = xSize;
+		sizeY = ySize;
+		sizeZ = zSize;
+		tiles = new short[xSize * ySize * zSize * FACES];
+		Arrays.fill(tiles, UNRESOLVED);
+	}
+	
+	/**
+	 * @return the tile of a face of a cell, UNRESOLVED if it hasn't been resolved since its terrain last changed
+	 */
+	public int get(int face, int x, int y, int z)
+	{
+		return tiles[((x * sizeY + y) * sizeZ + z) * FACES + face];
+	}
+	
+	public void set(int face, int x, int y, int z, int tile)
+	{
+		tiles[((x * sizeY + y) * sizeZ + z) * FACES + face] = (short)tile;
+	}
+	
+	/**
+	 * Unresolve every tile, used when terrain is replaced wholesale
+	 */
+	public void invalidateAll()
+	{
+		Arrays.fill(tiles, UNRESOLVED);
+	}
+	
+	/**
+	 * Unresolve the tiles of a cell and every cell whose tiles depend on it, which are at most one cell away on
+	 * each axis
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 */
+	public void invalidateAround(int x, int y, int z)
+	{
+		for (int i = Math.max(0, x - 1); i <= Math.min(sizeX - 1, x + 1); i ++)
+		{
+			for (int j = Math.max(0, y - 1); j <= Math.min(sizeY - 1, y + 1); j ++)
+			{
+				int start = ((i * sizeY + j) * sizeZ + Math.max(0, z - 1)) * FACES;
+				int end = ((i * sizeY + j) * sizeZ + Math.min(sizeZ - 1, z + 1) + 1) * FACES;
+				Arrays.fill(tiles, start, end, UNRESOLVED);
+			}
+		}
+	}
+}
@@ -2,18 +2,23 @@ package world;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.lwjgl.opengl.GL11;
 import org.newdawn.slick.opengl.Texture;
-import org.newdawn.slick.opengl.TextureLoader;
-import org.newdawn.slick.util.ResourceLoader;
 
 import things.Thing;
 import things.ThingGridCell;
+import utils.display.DecodedImage;
 import utils.display.DisplayText;
+import utils.display.GLRenderer;
+import utils.display.Renderer;
+import utils.display.Renderer.renderPhase;
+import utils.display.SpriteBatch;
+import utils.display.TextureRegistry;
 import entities.Agent;
+import entities.AgentView;
 import entities.Hero;
-import entities.Placeholder;
 import static world.Terrain.terrainType.*;
 import static world.World.timeOfDay.*;
 import static world.World.controlState.*;
@@ -22,10 +27,19 @@ public class World {
 	Terrain[][][] terrainGrid;
 	ThingGridCell[][][] thingGrid;
 	Agent[][][] agentGrid;
-	float[][][] lightModGrid;
+	LightGrid lightModGrid;
+	LightEngine lightEngine;
+	ShadowMap shadowMap;
+	OpacityGrid opacity;
+	OpacityGrid lightOpacity;	//occluders as the lighting and shadows see them, only changed on the render thread
+	HeightMap heightMap;
+	TileCache tileCache;
+	TerrainMesh terrainMesh;
+	SceneCache sceneCache;
+	OcclusionMap occlusionMap;
 	ArrayList<Agent> agents;
 	ArrayList<Thing> things;
-	ArrayList<Thing> lightSources;
+	ArrayList<Thing> lightSources;	//captured into each snapshot for the light engine
 	ArrayList<Thing> antiLightSources;
 	private float width;
 	private float depth;
@@ -48,8 +62,29 @@ public class World {
 	private Texture hTerrainTexture;
 	private Texture vTerrainTexture;
 	private Texture textTexture;
+	private float[] lightingColor = new float[3];
+	private Renderer renderer = new GLRenderer();
+	private SpriteBatch spriteBatch = new SpriteBatch(renderer);
+	private boolean cachedRendering = false;	//keep the rendered scene in a framebuffer and only redraw what changed
+	private boolean occlusionCulling = true;	//skip cells hidden behind opaque terrain drawn over them
 	
 	float[] displayCenter = new float[2];
+	float[] tickDisplayCenter;	//display center at the start of the current simulation tick
+	private long tickCount = 0;
+	private final AtomicReference<WorldSnapshot> snapshot = new AtomicReference<WorldSnapshot>();	//latest published tick
+	
+	//changes to terrain and to what blocks light, made by the simulation and applied by the renderer
+	private static final long OCCLUDER_LIGHT_BLOCKING = 1;
+	private static final long OCCLUDER_TERRAIN_BLOCKING = 2;
+	private static final long OCCLUDER_TERRAIN_OPAQUE = 4;
+	private static final long TERRAIN_CHANGED = 8;	//the cell's terrain was replaced, its tiles and mesh are out of date
+	private static final long TERRAIN_REPLACED = -1;	//every cell changed, the new occluders are in replacedOccluders
+	private final ConcurrentLinkedQueue<Long> cellChanges = new ConcurrentLinkedQueue<Long>();	//cell index << 4 | OCCLUDER_ and TERRAIN_ flags
+	private final ConcurrentLinkedQueue<OpacityGrid> replacedOccluders = new ConcurrentLinkedQueue<OpacityGrid>();	//one per TERRAIN_REPLACED
+	WorldSnapshot frame;	//snapshot being rendered
+	private float[] renderCenter = new float[2];	//display center of the frame being rendered
+	private float interpolation = 1.0f;	//fraction of a tick elapsed since the last one when rendering
+	private long interpolationTickNanos = 0;	//if set, interpolate by the time since the frame's snapshot was published
 	private boolean cameraLockV = false;
 	private boolean cameraLockH = false;
 	
@@ -100,7 +135,11 @@ public class World {
 		terrainGrid = new Terrain[xSize][ySize][zSize];
 		thingGrid = new ThingGridCell[xSize][ySize][zSize];
 		agentGrid = new Agent[xSize][ySize][zSize];
-		lightModGrid = new float[xSize][ySize][zSize];
+		lightModGrid = new LightGrid(xSize, ySize, zSize);
+		opacity = new OpacityGrid(xSize, ySize, zSize);
+		lightOpacity = new OpacityGrid(xSize, ySize, zSize);
+		heightMap = new HeightMap(this);
+		tileCache = new TileCache(xSize, ySize, zSize);
 		
 		setWidth(xSize);
 		depth = ySize;
@@ -110,6 +149,11 @@ public class World {
 		things = new ArrayList<Thing>();
 		lightSources = new ArrayList<Thing>();
 		antiLightSources = new ArrayList<Thing>();
+		lightEngine = new LightEngine(this);
+		shadowMap = new ShadowMap(this);
+		terrainMesh = new TerrainMesh(this, PIXEL_SIZE*TEXTURE_SIZE, ((float)TEXTURE_SIZE)/((float)V_TEXTURE_SHEET_SIZE), ((float)TEXTURE_SIZE)/((float)H_TEXTURE_SHEET_SIZE));
+		sceneCache = new SceneCache(this, 800, 600, PIXEL_SIZE*TEXTURE_SIZE);
+		occlusionMap = new OcclusionMap(this);
 		
 		textBoxActive = false;
 		textDisplay = new DisplayText();
@@ -121,9 +165,17 @@ public class World {
 	public void loadTextures()
 	{
 		try {
-			hTerrainTexture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream("graphics/terrain/HTerrain.png"));
-			vTerrainTexture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream("graphics/terrain/VTerrain.png"));
-			textTexture = TextureLoader.getTexture("png", ResourceLoader.getResourceAsStream("graphics/fonts/text.png"));
+			TextureRegistry.keepImage("graphics/terrain/HTerrain.png");
+			TextureRegistry.keepImage("graphics/terrain/VTerrain.png");
+			hTerrainTexture = TextureRegistry.getTexture("graphics/terrain/HTerrain.png");
+			vTerrainTexture = TextureRegistry.getTexture("graphics/terrain/VTerrain.png");
+			textTexture = TextureRegistry.getTexture("graphics/fonts/text.png");
+			
+			//the sheets' pixels are only kept when they were decoded, so headless runs cull nothing
+			DecodedImage hSheet = TextureRegistry.takeImage("graphics/terrain/HTerrain.png");
+			DecodedImage vSheet = TextureRegistry.takeImage("graphics/terrain/VTerrain.png");
+			if (hSheet != null && vSheet != null)
+				occlusionMap.setTileSheets(vSheet, hSheet, TEXTURE_SIZE);
 		} catch (IOException e) {e.printStackTrace();}
 	}
 	
@@ -138,6 +190,49 @@ public class World {
 		}
 	}
 	
+	/**
+	 * Start a simulation tick, remembering where the camera and agents are so frames rendered before the next
+	 * tick can be drawn part way between the two
+	 */
+	public void beginTick()
+	{
+		tickCount ++;
+		if (tickDisplayCenter == null)
+			tickDisplayCenter = new float[2];
+		tickDisplayCenter[0] = displayCenter[0];
+		tickDisplayCenter[1] = displayCenter[1];
+		for (int i = 0; i < agents.size(); i ++)
+		{
+			agents.get(i).saveTickState();
+		}
+	}
+	
+	/**
+	 * Publish the state the last tick left the world in for rendering.  Must be called from the thread running
+	 * the simulation; the renderer draws the latest snapshot published, whichever thread it runs on.
+	 */
+	public void publishSnapshot()
+	{
+		snapshot.set(new WorldSnapshot(this, tickCount, updateHeightMax()));
+	}
+	
+	/**
+	 * @return the latest published snapshot, null if none has been published yet
+	 */
+	public WorldSnapshot getSnapshot()
+	{
+		return snapshot.get();
+	}
+	
+	/**
+	 * Advance the text in the text box by a tick
+	 */
+	public void updateTextBox()
+	{
+		if (textBoxActive)
+			textDisplay.update();
+	}
+	
 	/**
 	 * Run an update on all agents active in the world
 	 */
@@ -165,15 +260,12 @@ public class World {
 		int z = player.getPos().z;
 		
 		//roof check
-		for (int k = z; k < terrainGrid[0][0].length; k ++)
+		if (heightMap.getTopBlockingTerrain(x, y) >= z)
 		{
-			if (terrainGrid[x][y][k].getTerrainType() != air)
-			{
-				//adjustment for standing on stairs
-				if (z - 1 >= 0 && this.hasThing(x, y, z - 1) && this.getThingsAt(x, y, z - 1).hasRamp())
-					return z + player.getHeight() - 1;
-				return z + player.getHeight();
-			}
+			//adjustment for standing on stairs
+			if (z - 1 >= 0 && this.hasThing(x, y, z - 1) && this.getThingsAt(x, y, z - 1).hasRamp())
+				return z + player.getHeight() - 1;
+			return z + player.getHeight();
 		}
 		
 		//occluding wall check
@@ -182,6 +274,9 @@ public class World {
 			int k = z + (y - j);
 			if (k >= terrainGrid[0][0].length)
 				break;
+			//nothing to find if the column tops out below the wall height
+			if (heightMap.getTopBlockingTerrain(x, j) < k)
+				continue;
 			for (int i = 0; i < 10; i ++)
 			{
 				if (k + i >= terrainGrid[0][0].length)
@@ -280,59 +375,24 @@ public class World {
 		setDisplayCenter(newDisplayCenter);
 	}
 	
+	/**
+	 * Determine whether a cell is in the sun's shadow at the time of day being rendered, using the cached shadow map
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 * @return true if the cell is shadowed
+	 */
 	public boolean isShadowed(int x, int y, int z)
 	{
-		int shadowLength = 1;
-		int shadowDirection = 1;
-		boolean longShadows = false;
-		switch (tod)
-		{
-		case sunrise:
-			longShadows = true;
-			break;
-		case morning:
-			shadowLength = 3;
-			break;
-		case midday: 
-			shadowDirection = 0;
-			break;
-		case afternoon: 
-			shadowLength = 3;
-			shadowDirection = -1;
-			break;
-		case sunset: 
-			shadowDirection = -1;
-			longShadows = true;
-			break;
-		case night: 
-			//no shadows
-			return false;
-		default: 
-			shadowDirection = 0;
-			break;
-		}
-		
-		for (int k = 0; k + z < terrainGrid[0][0].length; k ++)
-		{
-			if (k % shadowLength == 0)
-				x += shadowDirection;
-
-			if (x < 0 || x >= terrainGrid[0].length || y < 0 || y >= terrainGrid[0].length)
-				break;
-			
-			if (!terrainGrid[x][y][k + z].isTransparent())
-				return true;
-			
-			if (longShadows && y + 1 < terrainGrid[0].length && !terrainGrid[x][y + 1][k + z].isTransparent())
-				return true;
-		}
-		
-		return false;
+		return shadowMap.isShadowed(frame.getTod(), x, y, z);
 	}
 	
 	/**
 	 * Update specified portion of the grid for light modifications; grid parameters are assumed to be
-	 * in bounds.
+	 * in bounds.  The grid is kept between frames, so only regions affected by changes since the last
+	 * update are recomputed.  Changes the simulation made to terrain and to what blocks light are applied
+	 * first, so this must be called from the render thread before any terrain is drawn.
 	 * 
 	 * @param xMin minimum x coordinate
 	 * @param xMax maximum x coordinate
@@ -343,82 +403,50 @@ public class World {
 	 */
 	public void updateLightModGrid(int xMin, int xMax, int yMin, int yMax, int zMin, int zMax)
 	{
-		float[][][] clearFloatGrid = new float[terrainGrid.length][terrainGrid[0].length][terrainGrid[0][0].length];
-		lightModGrid = clearFloatGrid;
-		
-		for (int n = 0; n < lightSources.size(); n ++)
+		applyCellChanges();
+		lightEngine.update(xMin, xMax, yMin, yMax, zMin, zMax);
+	}
+	
+	/**
+	 * Bring the render side copy of the occluders up to date with the changes queued by the simulation, and let
+	 * the lighting, shadows, terrain mesh, and tile cache know which cells changed
+	 */
+	private void applyCellChanges()
+	{
+		int sizeY = terrainGrid[0].length;
+		int sizeZ = terrainGrid[0][0].length;
+		Long change;
+		while ((change = cellChanges.poll()) != null)
 		{
-			Position lightPos = lightSources.get(n).getPos();
-			int i = lightPos.x;
-			int j = lightPos.y;
-			int k = lightPos.z;
-			if ((i >= xMin && i <= xMax) || (j >= yMin && j <= yMax) || (k >= zMin && k <= zMax))
+			if (change == TERRAIN_REPLACED)
 			{
-				//TODO: Update this to distinguish between point and directed lights
-				//point light update
-				float lightPower = lightSources.get(n).getLightPower();
-				int lightDst = (int)(lightPower * 10);
-				int iMin = Math.max(i - lightDst, 0);
-				int jMin = Math.max(j - lightDst, 0);
-				int kMin = Math.max(k - lightDst, 0);
-				int iMax = Math.min(i + lightDst, terrainGrid.length - 1);
-				int jMax = Math.min(j + lightDst, terrainGrid[0].length - 1);
-				int kMax = Math.min(k + lightDst, terrainGrid[0][0].length - 1);
-				for (int i2 = iMin; i2 <= iMax; i2 ++)
-				{
-					for (int j2 = jMin; j2 <= jMax; j2 ++)
-					{
-						for (int k2 = kMin; k2 <= kMax; k2 ++)
-						{
-							if (!checkLightBlockingLineOfSight(i, j, k, i2, j2, k2))
-							{
-								//increase light modification based on distance to light source
-								float dst = (float)Math.sqrt(Math.pow(i - i2, 2) + Math.pow(j - j2, 2) + Math.pow(k - k2, 2));
-								float updateVal = Math.max(lightPower - dst/10.0f, 0);
-								if (updateVal > lightModGrid[i2][j2][k2])
-									lightModGrid[i2][j2][k2] = updateVal;
-							}
-						}
-					}
-				}
+				lightOpacity = replacedOccluders.poll();
+				lightEngine.invalidateAll();
+				shadowMap.invalidateAll();
+				tileCache.invalidateAll();
+				terrainMesh.invalidateAll();
+				occlusionMap.terrainChanged();
+				sceneCache.invalidate();
+				continue;
 			}
-		}
-		
-		for (int n = 0; n < antiLightSources.size(); n ++)
-		{
-			Position lightPos = antiLightSources.get(n).getPos();
-			int i = lightPos.x;
-			int j = lightPos.y;
-			int k = lightPos.z;
-			if ((i >= xMin && i <= xMax) || (j >= yMin && j <= yMax) || (k >= zMin && k <= zMax))
+			
+			int cell = (int)(change >> 4);
+			int x = cell / (sizeY * sizeZ);
+			int y = cell / sizeZ % sizeY;
+			int z = cell % sizeZ;
+			boolean lightChanged = lightOpacity.setLightBlocking(x, y, z, (change & OCCLUDER_LIGHT_BLOCKING) != 0);
+			if (lightOpacity.setTerrainBlocking(x, y, z, (change & OCCLUDER_TERRAIN_BLOCKING) != 0))
+				lightChanged = true;
+			if (lightChanged)
+				lightEngine.occluderChanged(x, y, z);
+			if (lightOpacity.setTerrainOpaque(x, y, z, (change & OCCLUDER_TERRAIN_OPAQUE) != 0))
+				shadowMap.terrainChanged(x, y, z);
+			if ((change & TERRAIN_CHANGED) != 0)
 			{
-				//TODO: Update this to distinguish between point and directed lights
-				//point light update
-				float lightPower = antiLightSources.get(n).getLightPower();
-				int lightDst = (int)(lightPower * 10);
-				int iMin = Math.max(i - lightDst, 0);
-				int jMin = Math.max(j - lightDst, 0);
-				int kMin = Math.max(k - lightDst, 0);
-				int iMax = Math.min(i + lightDst, terrainGrid.length - 1);
-				int jMax = Math.min(j + lightDst, terrainGrid[0].length - 1);
-				int kMax = Math.min(k + lightDst, terrainGrid[0][0].length - 1);
-				for (int i2 = iMin; i2 <= iMax; i2 ++)
-				{
-					for (int j2 = jMin; j2 <= jMax; j2 ++)
-					{
-						for (int k2 = kMin; k2 <= kMax; k2 ++)
-						{
-							if (!checkLightBlockingLineOfSight(i, j, k, i2, j2, k2))
-							{
-								//increase light modification based on distance to light source
-								float dst = (float)Math.sqrt(Math.pow(i - i2, 2) + Math.pow(j - j2, 2) + Math.pow(k - k2, 2));
-								float updateVal = Math.min(lightPower + dst/10.0f, 0);
-								if (updateVal < lightModGrid[i2][j2][k2])
-									lightModGrid[i2][j2][k2] = updateVal;
-							}
-						}
-					}
-				}
+				tileCache.invalidateAround(x, y, z);
+				terrainMesh.terrainChanged(x, y, z);
+				occlusionMap.terrainChanged();
+				sceneCache.invalidate();
 			}
 		}
 	}
@@ -428,13 +456,34 @@ public class World {
 	 */
 	public void renderWorld()
 	{		
+		//nothing is published before the first tick, capturing here is only safe before the simulation starts
+		frame = snapshot.get();
+		if (frame == null)
+		{
+			publishSnapshot();
+			frame = snapshot.get();
+		}
+		if (interpolationTickNanos > 0)
+			setInterpolation((float)(System.nanoTime() - frame.getTime()) / interpolationTickNanos);
+		
+		//camera and agents are drawn part way between the last two ticks, camera jumps of half a screen or more aren't smoothed
+		float centerX = frame.getDisplayCenterX();
+		float centerY = frame.getDisplayCenterY();
+		renderCenter[0] = centerX;
+		renderCenter[1] = centerY;
+		if (Math.abs(centerX - frame.getTickDisplayCenterX()) < 12 && Math.abs(centerY - frame.getTickDisplayCenterY()) < 9)
+		{
+			renderCenter[0] += (frame.getTickDisplayCenterX() - centerX)*(1.0f - interpolation);
+			renderCenter[1] += (frame.getTickDisplayCenterY() - centerY)*(1.0f - interpolation);
+		}
+		
 		int iMin, iMax, jMin, jMax, kMin, kMax;
 		kMin = 0;
-		kMax = Math.min(terrainGrid[0][0].length - 1, updateHeightMax());
-		iMin = Math.max(0, (int)(displayCenter[0] - 13));
-		iMax = Math.min(terrainGrid.length - 1, (int)(displayCenter[0] + 15));
-		jMin = Math.max(0, (int)(displayCenter[1] - 10 - kMax));
-		jMax = Math.min(terrainGrid[0].length - 1, (int)(displayCenter[1] + 11 + kMax));
+		kMax = Math.min(terrainGrid[0][0].length - 1, frame.getHeightMax());
+		iMin = Math.max(0, (int)(renderCenter[0] - 13));
+		iMax = Math.min(terrainGrid.length - 1, (int)(renderCenter[0] + 15));
+		jMin = Math.max(0, (int)(renderCenter[1] - 10 - kMax));
+		jMax = Math.min(terrainGrid[0].length - 1, (int)(renderCenter[1] + 11 + kMax));
 		
 		//adjustment for off-screen lights, this may need experimentation depending on max light distances
 		int buffer = 4;
@@ -448,381 +497,83 @@ public class World {
 		updateLightModGrid(lightXMin, lightXMax, lightYMin, lightYMax, lightZMin, lightZMax);
 		//updateLightModGrid(iMin, iMax, jMin, jMax, lightZMin, lightZMax);
 		
-		for (int k = kMin; k <= kMax; k ++)
+		int originX = PIXEL_SIZE*(-(int)(renderCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+		int originY = PIXEL_SIZE*(-(int)(renderCenter[1]*TEXTURE_SIZE)) + 300 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+		terrainMesh.setCamera(originX, originY);
+		if (occlusionCulling)
+			occlusionMap.update(iMin, iMax, jMin, jMax, kMax);
+		
+		if (!cachedRendering || !renderer.supportsFramebuffers() || !sceneCache.render(iMin, iMax, jMin, jMax, kMax, originX, originY))
+			renderScene(iMin, iMax, jMin, jMax, kMax, jMin + kMin, jMax + kMax);
+	}
+	
+	/**
+	 * Render terrain, things, and agents by layers for the cells within a range of screen rows.  A cell's screen
+	 * row is j + k; limiting the rows lets part of the screen be redrawn in the same order as the whole.
+	 * 
+	 * @param iMin minimum x coordinate
+	 * @param iMax maximum x coordinate
+	 * @param jMin minimum y coordinate
+	 * @param jMax maximum y coordinate
+	 * @param kMax highest layer being rendered
+	 * @param rowMin lowest screen row to draw
+	 * @param rowMax highest screen row to draw
+	 */
+	void renderScene(int iMin, int iMax, int jMin, int jMax, int kMax, int rowMin, int rowMax)
+	{
+		for (int k = 0; k <= kMax; k ++)
 		{
+			//layers below the top two don't depend on kMax, so they are drawn from the cached chunk meshes
+			boolean meshed = k <= kMax - 2;
+			int jLow = Math.max(jMin, rowMin - k);
+			int jHigh = Math.min(jMax, rowMax - k);
+			int bandTop = jHigh;
+			
 			//***************************************************************************************************************
 			//********* TERRAIN AND THING AND AGENT RENDERING ***************************************************************
 			//***************************************************************************************************************
-			for (int j = jMax; j >= jMin; j --)
+			for (int j = jHigh; j >= jLow; j --)
 			{
-				for (int i = iMin; i <= iMax; i ++)
+				if (meshed)
 				{
-					Terrain t = terrainGrid[i][j][k];					
-					
-					//Display vertical textures
-					if (t.getTerrainType() != air)
+					//terrain rows are batched until a row with things or agents, which have to be drawn over their own row
+					//and under the rows in front of it
+					if (hasSpritesInRow(iMin, iMax, j, k))
 					{
-						//Determine position on screen
-						int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(displayCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-						int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(displayCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-						
-						GL11.glPushMatrix();
-						
-							//Translate to screen position and bind appropriate texture
-							GL11.glColor3f(1.0f, 1.0f, 1.0f);
-							GL11.glEnable(GL11.GL_TEXTURE_2D);
-							GL11.glTranslatef(x, y, 0);
-							vTerrainTexture.bind();
-							GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-					    	
-							
-							if (k < kMax || (k == kMax && t.isTransparent()))
-							{
-						    	//Determine which part of the texture to use based on how many neighbors are air
-						    	int texX = t.getTexCol();
-						    	int texY = t.getTexRow();
-						    	
-						    	boolean topEmpty, rightEmpty, leftEmpty, bottomOnGround;
-						    	
-						    	if (t.isUnblendedVertical())
-						    	{
-							    	topEmpty = k + 1 >= terrainGrid[0][0].length || terrainGrid[i][j][k+1].getTerrainType() != t.getTerrainType();
-					    			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k].getTerrainType() != t.getTerrainType();
-					    			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k].getTerrainType() != t.getTerrainType();
-	
-					    			bottomOnGround = false;
-					    			if (k - 1 < 0 || j - 1 < 0)
-					    				bottomOnGround = true;
-					    			else if (terrainGrid[i][j][k-1].getTerrainType() != t.getTerrainType())
-					    				bottomOnGround = true;
-						    	}
-						    	else
-						    	{
-							    	topEmpty = k + 1 >= terrainGrid[0][0].length || terrainGrid[i][j][k+1].getTerrainType() == air || terrainGrid[i][j][k+1].isUnblendedVertical();
-					    			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k].getTerrainType() == air || terrainGrid[i+1][j][k].isUnblendedVertical();
-					    			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k].getTerrainType() == air || terrainGrid[i-1][j][k].isUnblendedVertical();
-	
-					    			bottomOnGround = false;
-					    			if (k - 1 < 0 || j - 1 < 0)
-					    				bottomOnGround = false;
-					    			else if (terrainGrid[i][j-1][k].getTerrainType() == air && terrainGrid[i][j-1][k-1].getTerrainType() != air)
-					    				bottomOnGround = true;
-						    	}
-				    			
-					    		if (topEmpty && bottomOnGround)
-					    		{
-					    			texY += 3;
-					    		}
-					    		else if (topEmpty)
-					    		{
-					    			//texY is unchanged, this case is required for the else case and organizational purposes
-					    		}
-					    		else if (bottomOnGround)
-					    		{
-					    			texY += 2;
-					    		}
-					    		else
-					    		{
-					    			texY += 1;
-					    		}
-					    		
-					    		if (leftEmpty && rightEmpty)
-					    		{
-					    			texX += 3;
-					    		}
-					    		else if (leftEmpty)
-					    		{
-					    			//texX is unchanged, this case is required for the else case and organizational purposes
-					    		}
-					    		else if (rightEmpty)
-					    		{
-					    			texX += 2;
-					    		}
-					    		else
-					    		{
-					    			texX += 1;
-					    		}
-						    	
-					    		float tConv = ((float)TEXTURE_SIZE)/((float)V_TEXTURE_SHEET_SIZE);
-						    	
-						    	GL11.glBegin(GL11.GL_QUADS);
-						    		if (k == kMax && t.isTransparent())
-						    			setLighting(false, lightModGrid[i][j][k], .75f);
-						    		else
-						    			setLighting(false, lightModGrid[i][j][k]);
-									GL11.glTexCoord2f(texX * tConv, texY*tConv + tConv);
-									GL11.glVertex2f(0, 0);
-									GL11.glTexCoord2f(texX*tConv + tConv, texY*tConv + tConv);
-									GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, 0);
-									GL11.glTexCoord2f(texX*tConv + tConv, texY * tConv);
-									GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, PIXEL_SIZE*TEXTURE_SIZE);
-									GL11.glTexCoord2f(texX*tConv, texY * tConv);
-									GL11.glVertex2f(0, PIXEL_SIZE*TEXTURE_SIZE);
-								GL11.glEnd();
-							}
-							else
-							{
-								//Commented out conditional also accounts for having a fullBlock thing below the piece of vertical terrain.
-								//Uncomment this if there is ever a thing that is made to replace a wall.
-								//if (terrainGrid[i][j][k-1].type != air || (this.hasThing(i, j, k-1) && this.getThingsAt(i, j, k-1).hasFullBlock()))
-								if (terrainGrid[i][j][k-1].type != air)
-								{
-									GL11.glColor3f(0, 0, 0);
-									GL11.glBegin(GL11.GL_QUADS);
-										GL11.glVertex2f(0, 0);
-										GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, 0);
-										GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, PIXEL_SIZE*TEXTURE_SIZE);
-										GL11.glVertex2f(0, PIXEL_SIZE*TEXTURE_SIZE);
-									GL11.glEnd();
-									GL11.glColor3f(1, 1, 1);
-								}
-							}
-							
-						GL11.glPopMatrix();
-						//Edge overhang textures
-						if ((j == 0 || (j - 1 >= 0 && terrainGrid[i][j-1][k].getTerrainType() == air)) 
-								&& k != kMax && terrainGrid[i][j][k+1].getTerrainType() == air)
-						{
-							t = terrainGrid[i][j][k];
-							//Determine position on screen
-							x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(displayCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-							y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(displayCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-							GL11.glPushMatrix();
-							
-							//Translate to screen position and bind appropriate texture
-							GL11.glColor3f(1.0f, 1.0f, 1.0f);
-							GL11.glEnable(GL11.GL_TEXTURE_2D);
-							GL11.glTranslatef(x, y, 0);
-							hTerrainTexture.bind();
-							GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-
-							//Determine which part of the texture to use based on how many neighbors are air
-					    	int texX = t.getTexColTop();
-					    	int texY = t.getTexRowTop();
-					    	float tConv;
-						
-							boolean rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k].getTerrainType() == air,
-			    			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k].getTerrainType() == air;
-			    		
-				    		texY += 4;
-				    		
-				    		if (leftEmpty && rightEmpty)
-				    		{
-				    			texX += 3;
-				    		}
-				    		else if (leftEmpty)
-				    		{
-				    			//texX is unchanged, this case is required for the else case and organizational purposes
-				    		}
-				    		else if (rightEmpty)
-				    		{
-				    			texX += 2;
-				    		}
-				    		else
-				    		{
-				    			texX += 1;
-				    		}
-				    		
-				    		tConv = ((float)TEXTURE_SIZE)/((float)H_TEXTURE_SHEET_SIZE);	//width and height of texture sheet
-				    		
-				    		GL11.glBegin(GL11.GL_QUADS);
-				    			setLighting(isShadowed(i, j, k+1), lightModGrid[i][j][k+1]);
-				    			GL11.glTexCoord2f(texX * tConv, texY*tConv + tConv);
-								GL11.glVertex2f(0, 0);
-								GL11.glTexCoord2f(texX*tConv + tConv, texY*tConv + tConv);
-								GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, 0);
-								GL11.glTexCoord2f(texX*tConv + tConv, texY * tConv);
-								GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, PIXEL_SIZE*TEXTURE_SIZE);
-								GL11.glTexCoord2f(texX*tConv, texY * tConv);
-								GL11.glVertex2f(0, PIXEL_SIZE*TEXTURE_SIZE);
-							GL11.glEnd();
-						
-						GL11.glPopMatrix();
-						}
+						renderTerrainBand(k, bandTop, j, iMin, iMax);
+						bandTop = j - 1;
 					}
-					//Display horizontal textures
-					else if (k - 1 >= 0 && terrainGrid[i][j][k-1].getTerrainType() != air)
+				}
+				else
+				{
+					spriteBatch.flush();
+					renderer.setPhase(renderPhase.terrain);
+					for (int i = iMin; i <= iMax; i ++)
 					{
-						if (k - 1 >= 0)
-						{							
-							t = terrainGrid[i][j][k-1];
-							//Determine position on screen
-							int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(displayCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-							int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(displayCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-							
-							GL11.glPushMatrix();
-								
-								//Translate to screen position and bind appropriate texture
-								GL11.glColor3f(1.0f, 1.0f, 1.0f);
-								GL11.glEnable(GL11.GL_TEXTURE_2D);
-								GL11.glTranslatef(x, y, 0);
-								hTerrainTexture.bind();
-								GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-						    	
-						    	//Determine which part of the texture to use based on how many neighbors are air
-						    	int texX = t.getTexColTop();
-						    	int texY = t.getTexRowTop();
-						    	float tConv;
-							
-						    	boolean topEmpty, bottomEmpty, rightEmpty, leftEmpty;
-						    	if (t.isUnblendedHorizontal())
-						    	{
-									topEmpty = j + 1 >= terrainGrid[0].length || terrainGrid[i][j+1][k-1].getTerrainTop() != t.getTerrainTop();
-					    			bottomEmpty = j - 1 < 0 || terrainGrid[i][j-1][k-1].getTerrainTop() != t.getTerrainTop();
-					    			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k-1].getTerrainTop() != t.getTerrainTop();
-					    			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k-1].getTerrainTop() != t.getTerrainTop();
-						    	}
-						    	else
-						    	{
-									topEmpty = j + 1 >= terrainGrid[0].length || terrainGrid[i][j+1][k-1].getTerrainType() == air;
-					    			bottomEmpty = j - 1 < 0 || terrainGrid[i][j-1][k-1].getTerrainType() == air;
-					    			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k-1].getTerrainType() == air;
-					    			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k-1].getTerrainType() == air;
-						    	}
-				    		
-					    		if (topEmpty && bottomEmpty)
-					    		{
-					    			texY += 3;
-					    		}
-					    		else if (topEmpty)
-					    		{
-					    			//texY is unchanged, this case is required for the else case and organizational purposes
-					    		}
-					    		else if (bottomEmpty)
-					    		{
-					    			texY += 2;
-					    		}
-					    		else
-					    		{
-					    			texY += 1;
-					    		}
-					    		
-					    		if (leftEmpty && rightEmpty)
-					    		{
-					    			texX += 3;
-					    		}
-					    		else if (leftEmpty)
-					    		{
-					    			//texX is unchanged, this case is required for the else case and organizational purposes
-					    		}
-					    		else if (rightEmpty)
-					    		{
-					    			texX += 2;
-					    		}
-					    		else
-					    		{
-					    			texX += 1;
-					    		}
-					    		
-					    		tConv = ((float)TEXTURE_SIZE)/((float)H_TEXTURE_SHEET_SIZE);	//width and height of texture sheet
-					    		
-					    		GL11.glBegin(GL11.GL_QUADS);
-					    			setLighting(isShadowed(i, j, k), lightModGrid[i][j][k]);
-					    			GL11.glTexCoord2f(texX * tConv, texY*tConv + tConv);
-									GL11.glVertex2f(0, 0);
-									GL11.glTexCoord2f(texX*tConv + tConv, texY*tConv + tConv);
-									GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, 0);
-									GL11.glTexCoord2f(texX*tConv + tConv, texY * tConv);
-									GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, PIXEL_SIZE*TEXTURE_SIZE);
-									GL11.glTexCoord2f(texX*tConv, texY * tConv);
-									GL11.glVertex2f(0, PIXEL_SIZE*TEXTURE_SIZE);
-								GL11.glEnd();
-							
-							GL11.glPopMatrix();
-						}
+						if (!isTerrainCulled(i, j, k))
+							renderTerrainCell(i, j, k, kMax);
 					}
-					//Display hanging bottom vertical textures
-					if (k + 1 < kMax && terrainGrid[i][j][k+1].getTerrainType() != air && k - 1 >= 0
-							&& ((!terrainGrid[i][j][k+1].isUnblendedVertical() && (terrainGrid[i][j][k].getTerrainType() == air || terrainGrid[i][j][k].isUnblendedVertical()))
-									|| (terrainGrid[i][j][k+1].isUnblendedVertical() && (terrainGrid[i][j][k].getTerrainType() == air || terrainGrid[i][j][k].getTerrainType() != terrainGrid[i][j][k+1].getTerrainType()))))
-					{
-						t = terrainGrid[i][j][k+1];
-						//Determine position on screen
-						int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(displayCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-						int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(displayCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-						
-						GL11.glPushMatrix();
-							GL11.glColor3f(1.0f, 1.0f, 1.0f);
-							GL11.glEnable(GL11.GL_TEXTURE_2D);
-							GL11.glTranslatef(x, y, 0);
-							vTerrainTexture.bind();
-							GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-							
-							int texX = t.getTexCol();
-					    	int texY = t.getTexRow();
-					    	
-					    	boolean rightEmpty, leftEmpty;
-					    	
-					    	if (t.isUnblendedVertical())
-					    	{
-					    		rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k+1].getTerrainType() != t.getTerrainType();
-				    			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k+1].getTerrainType() != t.getTerrainType();
-					    	}
-					    	else
-					    	{
-						    	rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k+1].getTerrainType() == air;
-				    			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k+1].getTerrainType() == air;
-					    	}
-							
-				    		texY += 4;
-							
-				    		if (leftEmpty && rightEmpty)
-				    		{
-				    			texX += 3;
-				    		}
-				    		else if (leftEmpty)
-				    		{
-				    			//texX is unchanged, this case is required for the else case and organizational purposes
-				    		}
-				    		else if (rightEmpty)
-				    		{
-				    			texX += 2;
-				    		}
-				    		else
-				    		{
-				    			texX += 1;
-				    		}
-					    	
-				    		float tConv = ((float)TEXTURE_SIZE)/((float)V_TEXTURE_SHEET_SIZE);
-					    	
-				    		
-					    	GL11.glBegin(GL11.GL_QUADS);
-					    		setLighting(false, lightModGrid[i][j][k+1]);
-								GL11.glTexCoord2f(texX * tConv, texY*tConv + tConv);
-								GL11.glVertex2f(0, 0);
-								GL11.glTexCoord2f(texX*tConv + tConv, texY*tConv + tConv);
-								GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, 0);
-								GL11.glTexCoord2f(texX*tConv + tConv, texY * tConv);
-								GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE, PIXEL_SIZE*TEXTURE_SIZE);
-								GL11.glTexCoord2f(texX*tConv, texY * tConv);
-								GL11.glVertex2f(0, PIXEL_SIZE*TEXTURE_SIZE);
-							GL11.glEnd();
-							
-						GL11.glPopMatrix();
-					}
-					
 				}
 				
 				// Render Things
+				spriteBatch.setPhase(renderPhase.things);
 				for (int i = iMin; i <= iMax; i ++)
 				{
 					
-					if (this.hasThing(i, j, k))
+					if (this.hasThing(i, j, k) && !isSpriteCulled(i, j, k))
 					{
 						if (k < kMax)
 						{
-							int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(displayCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-							int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(displayCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+							int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(renderCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+							int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(renderCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
 							
-							GL11.glPushMatrix();
-								//don't shadow if the thing is in (i.e. on) a vertical wall
-								if (terrainGrid[i][j][k].getTerrainType() != air)
-									setLighting(false, lightModGrid[i][j][k]);
-								else
-									setLighting(isShadowed(i, j, k), lightModGrid[i][j][k]);
-								GL11.glTranslatef(x, y, 0);
-								thingGrid[i][j][k].renderThings(PIXEL_SIZE, TEXTURE_SIZE);
-							GL11.glPopMatrix();
+							//don't shadow if the thing is in (i.e. on) a vertical wall
+							if (terrainGrid[i][j][k].getTerrainType() != air)
+								setSpriteLighting(false, lightModGrid.get(i, j, k));
+							else
+								setSpriteLighting(isShadowed(i, j, k), lightModGrid.get(i, j, k));
+							spriteBatch.setOffset(x, y);
+							thingGrid[i][j][k].renderThings(spriteBatch, frame, PIXEL_SIZE, TEXTURE_SIZE);
 						}
 						else
 						{
@@ -831,22 +582,24 @@ public class World {
 							//if (terrainGrid[i][j][k-1].type != air || (this.hasThing(i, j, k-1) && this.getThingsAt(i, j, k-1).hasFullBlock()))
 							if (this.getThingsAt(i, j, k).hasFullBlock() && ((this.hasThing(i, j, k-1) && this.getThingsAt(i, j, k-1).hasFullBlock()) || this.hasThing(i, j, k-2) && this.getThingsAt(i, j, k-2).hasTallBlock()))
 							{
-								int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(displayCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-								int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(displayCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+								int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(renderCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+								int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(renderCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
 								
 								int adjustment = (this.getThingsAt(i, j, k).getBlockingWidth() - TEXTURE_SIZE) / 2;
 								
-								GL11.glPushMatrix();
-									GL11.glColor3f(0, 0, 0);
-									GL11.glTranslatef(x - (PIXEL_SIZE*adjustment), y, 0);
-									GL11.glBegin(GL11.GL_QUADS);
-										GL11.glVertex2f(0, 0);
-										GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE + (PIXEL_SIZE*adjustment*2), 0);
-										GL11.glVertex2f(PIXEL_SIZE*TEXTURE_SIZE + (PIXEL_SIZE*adjustment*2), PIXEL_SIZE*TEXTURE_SIZE);
-										GL11.glVertex2f(0, PIXEL_SIZE*TEXTURE_SIZE);
-									GL11.glEnd();
-									GL11.glColor3f(1, 1, 1);
-								GL11.glPopMatrix();
+								spriteBatch.flush();
+								renderer.setPhase(renderPhase.things);
+								renderer.pushMatrix();
+									renderer.setColor(0, 0, 0, 1);
+									renderer.translate(x - (PIXEL_SIZE*adjustment), y);
+									renderer.beginQuads();
+										renderer.vertex(0, 0);
+										renderer.vertex(PIXEL_SIZE*TEXTURE_SIZE + (PIXEL_SIZE*adjustment*2), 0);
+										renderer.vertex(PIXEL_SIZE*TEXTURE_SIZE + (PIXEL_SIZE*adjustment*2), PIXEL_SIZE*TEXTURE_SIZE);
+										renderer.vertex(0, PIXEL_SIZE*TEXTURE_SIZE);
+									renderer.end();
+									renderer.setColor(1, 1, 1, 1);
+								renderer.popMatrix();
 							}
 						}
 					}
@@ -854,44 +607,403 @@ public class World {
 				if (k <= kMax)
 				{
 					//Render Agents
+					spriteBatch.setPhase(renderPhase.agents);
 					for (int i = iMin; i <= iMax; i ++)
 					{
-						Agent agent = agentGrid[i][j][k];
-						if (agent != null)
+						AgentView agent = frame.getAgentAt(i, j, k);
+						if (agent != null && !isSpriteCulled(i, j, k))
 						{
-							int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(displayCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
-							int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(displayCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+							int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(renderCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+							int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(renderCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
 							
-							GL11.glPushMatrix();
-								if (agent.getClass() == Placeholder.class)
-								{
-									Position effectivePos = ((Placeholder)agent).getEffectivePos();
-									setLighting(isShadowed(effectivePos.x, effectivePos.y, effectivePos.z), lightModGrid[effectivePos.x][effectivePos.y][effectivePos.z]);
-								}
-								else
-									setLighting(isShadowed(i, j, k), lightModGrid[i][j][k]);
-								GL11.glTranslatef(x, y, 0);
-								agent.renderAgent(PIXEL_SIZE, TEXTURE_SIZE);
-							GL11.glPopMatrix();
+							//placeholders are lit where the agent they stand in for is
+							int lx = agent.getLightX(), ly = agent.getLightY(), lz = agent.getLightZ();
+							setSpriteLighting(isShadowed(lx, ly, lz), lightModGrid.get(lx, ly, lz));
+							spriteBatch.setOffset(x, y);
+							agent.render(spriteBatch, interpolation, PIXEL_SIZE, TEXTURE_SIZE);
 						}
 					}
 				}
 			}
+			if (meshed && bandTop >= jLow)
+				renderTerrainBand(k, bandTop, jLow, iMin, iMax);
 		}
+		spriteBatch.flush();
 	}
-
+	
+	/**
+	 * Draw a band of rows in a layer from the cached chunk meshes.  Each chunk draws the band as one run of quads,
+	 * so hidden rows are only left out at either end of the band.
+	 * 
+	 * @param k the layer
+	 * @param jTop highest row of the band
+	 * @param jBottom lowest row of the band
+	 * @param iMin minimum x coordinate
+	 * @param iMax maximum x coordinate
+	 */
+	private void renderTerrainBand(int k, int jTop, int jBottom, int iMin, int iMax)
+	{
+		if (occlusionCulling)
+		{
+			while (jTop >= jBottom && occlusionMap.isTerrainRowHidden(iMin, iMax, jTop, k))
+				jTop --;
+			while (jBottom <= jTop && occlusionMap.isTerrainRowHidden(iMin, iMax, jBottom, k))
+				jBottom ++;
+			if (jTop < jBottom)
+				return;
+		}
+		
+		spriteBatch.flush();
+		renderer.setPhase(renderPhase.terrain);
+		terrainMesh.render(k, jTop, jBottom, iMin, iMax, vTerrainTexture, hTerrainTexture);
+	}
+	
+	/**
+	 * @return true if a cell's terrain is hidden behind opaque terrain and can be left out
+	 */
+	private boolean isTerrainCulled(int i, int j, int k)
+	{
+		return occlusionCulling && occlusionMap.isTerrainHidden(i, j, k);
+	}
+	
+	/**
+	 * @return true if the things and agents in a cell are hidden behind opaque terrain and can be left out
+	 */
+	private boolean isSpriteCulled(int i, int j, int k)
+	{
+		return occlusionCulling && occlusionMap.isSpriteHidden(i, j, k);
+	}
+	
+	/**
+	 * Render the terrain of a single cell in immediate mode, used for the top layers whose tiles depend on kMax
+	 * 
+	 * @param i grid location
+	 * @param j grid location
+	 * @param k grid location
+	 * @param kMax highest layer being rendered
+	 */
+	private void renderTerrainCell(int i, int j, int k, int kMax)
+	{
+		Terrain t = terrainGrid[i][j][k];
+		
+		//Determine position on screen
+		int x = PIXEL_SIZE*(TEXTURE_SIZE*i - (int)(renderCenter[0]*TEXTURE_SIZE)) + 400 - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+		int y = (PIXEL_SIZE*(TEXTURE_SIZE*j - (int)(renderCenter[1]*TEXTURE_SIZE)) + 300) + PIXEL_SIZE*TEXTURE_SIZE*k - (PIXEL_SIZE*TEXTURE_SIZE)/2;
+		
+		//Display vertical textures
+		if (t.getTerrainType() != air)
+		{
+			if (k < kMax || (k == kMax && t.isTransparent()))
+			{
+				if (k == kMax && t.isTransparent())
+					setLighting(false, lightModGrid.get(i, j, k), .75f);
+				else
+					setLighting(false, lightModGrid.get(i, j, k));
+				renderTile(vTerrainTexture, V_TEXTURE_SHEET_SIZE, verticalTile(i, j, k), x, y);
+			}
+			//Commented out conditional also accounts for having a fullBlock thing below the piece of vertical terrain.
+			//Uncomment this if there is ever a thing that is made to replace a wall.
+			//else if (terrainGrid[i][j][k-1].type != air || (this.hasThing(i, j, k-1) && this.getThingsAt(i, j, k-1).hasFullBlock()))
+			else if (terrainGrid[i][j][k-1].type != air)
+			{
+				renderer.pushMatrix();
+					renderer.translate(x, y);
+					renderer.bindTexture(vTerrainTexture);
+					renderer.setColor(0, 0, 0, 1);
+					renderer.beginQuads();
+						renderer.vertex(0, 0);
+						renderer.vertex(PIXEL_SIZE*TEXTURE_SIZE, 0);
+						renderer.vertex(PIXEL_SIZE*TEXTURE_SIZE, PIXEL_SIZE*TEXTURE_SIZE);
+						renderer.vertex(0, PIXEL_SIZE*TEXTURE_SIZE);
+					renderer.end();
+					renderer.setColor(1, 1, 1, 1);
+				renderer.popMatrix();
+			}
+			
+			//Edge overhang textures
+			if (hasOverhang(i, j, k, kMax))
+			{
+				setLighting(isShadowed(i, j, k+1), lightModGrid.get(i, j, k+1));
+				renderTile(hTerrainTexture, H_TEXTURE_SHEET_SIZE, overhangTile(i, j, k), x, y);
+			}
+		}
+		//Display horizontal textures
+		else if (hasTop(i, j, k))
+		{
+			setLighting(isShadowed(i, j, k), lightModGrid.get(i, j, k));
+			renderTile(hTerrainTexture, H_TEXTURE_SHEET_SIZE, topTile(i, j, k), x, y);
+		}
+		
+		//Display hanging bottom vertical textures
+		if (hasHangingBottom(i, j, k, kMax))
+		{
+			setLighting(false, lightModGrid.get(i, j, k+1));
+			renderTile(vTerrainTexture, V_TEXTURE_SHEET_SIZE, hangingTile(i, j, k), x, y);
+		}
+	}
+	
+	/**
+	 * Draw one tile of a terrain texture sheet in immediate mode with the current color
+	 * 
+	 * @param texture the texture sheet
+	 * @param sheetSize width and height of the texture sheet
+	 * @param tile the tile's column and row, as returned by the tile methods
+	 * @param x screen position
+	 * @param y screen position
+	 */
+	private void renderTile(Texture texture, int sheetSize, int tile, int x, int y)
+	{
+		int texX = tileCol(tile);
+		int texY = tileRow(tile);
+		float tConv = ((float)TEXTURE_SIZE)/((float)sheetSize);	//width and height of texture sheet
+		
+		renderer.pushMatrix();
+			//Translate to screen position and bind appropriate texture
+			renderer.translate(x, y);
+			renderer.bindTexture(texture);
+			
+			renderer.beginQuads();
+				renderer.texCoord(texX * tConv, texY*tConv + tConv);
+				renderer.vertex(0, 0);
+				renderer.texCoord(texX*tConv + tConv, texY*tConv + tConv);
+				renderer.vertex(PIXEL_SIZE*TEXTURE_SIZE, 0);
+				renderer.texCoord(texX*tConv + tConv, texY * tConv);
+				renderer.vertex(PIXEL_SIZE*TEXTURE_SIZE, PIXEL_SIZE*TEXTURE_SIZE);
+				renderer.texCoord(texX*tConv, texY * tConv);
+				renderer.vertex(0, PIXEL_SIZE*TEXTURE_SIZE);
+			renderer.end();
+		renderer.popMatrix();
+	}
+	
+	/**
+	 * @return true if a thing or agent in the row has to be drawn at this layer
+	 */
+	private boolean hasSpritesInRow(int iMin, int iMax, int j, int k)
+	{
+		for (int i = iMin; i <= iMax; i ++)
+		{
+			if ((this.hasThing(i, j, k) || frame.hasAgentAt(i, j, k)) && !isSpriteCulled(i, j, k))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Determine whether the edge of a cell's top overhangs the cell in front of it
+	 * @param kMax highest layer being rendered; any kMax of at least k + 2 gives the same result
+	 */
+	boolean hasOverhang(int i, int j, int k, int kMax)
+	{
+		return (j == 0 || (j - 1 >= 0 && terrainGrid[i][j-1][k].getTerrainType() == air)) 
+				&& k != kMax && terrainGrid[i][j][k+1].getTerrainType() == air;
+	}
+	
+	/**
+	 * Determine whether an air cell shows the top of the terrain below it
+	 */
+	boolean hasTop(int i, int j, int k)
+	{
+		return terrainGrid[i][j][k].getTerrainType() == air && k - 1 >= 0 && terrainGrid[i][j][k-1].getTerrainType() != air;
+	}
+	
+	/**
+	 * Determine whether the bottom of the terrain above a cell hangs down into it
+	 * @param kMax highest layer being rendered; any kMax of at least k + 2 gives the same result
+	 */
+	boolean hasHangingBottom(int i, int j, int k, int kMax)
+	{
+		return k + 1 < kMax && terrainGrid[i][j][k+1].getTerrainType() != air && k - 1 >= 0
+				&& ((!terrainGrid[i][j][k+1].isUnblendedVertical() && (terrainGrid[i][j][k].getTerrainType() == air || terrainGrid[i][j][k].isUnblendedVertical()))
+						|| (terrainGrid[i][j][k+1].isUnblendedVertical() && (terrainGrid[i][j][k].getTerrainType() == air || terrainGrid[i][j][k].getTerrainType() != terrainGrid[i][j][k+1].getTerrainType())));
+	}
+	
+	/**
+	 * Determine which tile of the vertical texture sheet a cell's face uses, based on which neighbors it blends with
+	 * @return the tile's column and row, packed
+	 */
+	int verticalTile(int i, int j, int k)
+	{
+		int tile = tileCache.get(TileCache.VERTICAL, i, j, k);
+		if (tile == TileCache.UNRESOLVED)
+		{
+			tile = resolveVerticalTile(i, j, k);
+			tileCache.set(TileCache.VERTICAL, i, j, k, tile);
+		}
+		return tile;
+	}
+	
+	private int resolveVerticalTile(int i, int j, int k)
+	{
+		Terrain t = terrainGrid[i][j][k];
+		boolean topEmpty, rightEmpty, leftEmpty, bottomOnGround;
+		
+		if (t.isUnblendedVertical())
+		{
+			topEmpty = k + 1 >= terrainGrid[0][0].length || terrainGrid[i][j][k+1].getTerrainType() != t.getTerrainType();
+			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k].getTerrainType() != t.getTerrainType();
+			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k].getTerrainType() != t.getTerrainType();
+			
+			bottomOnGround = false;
+			if (k - 1 < 0 || j - 1 < 0)
+				bottomOnGround = true;
+			else if (terrainGrid[i][j][k-1].getTerrainType() != t.getTerrainType())
+				bottomOnGround = true;
+		}
+		else
+		{
+			topEmpty = k + 1 >= terrainGrid[0][0].length || terrainGrid[i][j][k+1].getTerrainType() == air || terrainGrid[i][j][k+1].isUnblendedVertical();
+			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k].getTerrainType() == air || terrainGrid[i+1][j][k].isUnblendedVertical();
+			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k].getTerrainType() == air || terrainGrid[i-1][j][k].isUnblendedVertical();
+			
+			bottomOnGround = false;
+			if (k - 1 < 0 || j - 1 < 0)
+				bottomOnGround = false;
+			else if (terrainGrid[i][j-1][k].getTerrainType() == air && terrainGrid[i][j-1][k-1].getTerrainType() != air)
+				bottomOnGround = true;
+		}
+		
+		return packTile(t.getTexCol() + blendOffset(leftEmpty, rightEmpty), t.getTexRow() + blendOffset(topEmpty, bottomOnGround));
+	}
+	
+	/**
+	 * Determine which tile of the horizontal texture sheet the overhanging edge of a cell uses
+	 * @return the tile's column and row, packed
+	 */
+	int overhangTile(int i, int j, int k)
+	{
+		int tile = tileCache.get(TileCache.OVERHANG, i, j, k);
+		if (tile == TileCache.UNRESOLVED)
+		{
+			tile = resolveOverhangTile(i, j, k);
+			tileCache.set(TileCache.OVERHANG, i, j, k, tile);
+		}
+		return tile;
+	}
+	
+	private int resolveOverhangTile(int i, int j, int k)
+	{
+		Terrain t = terrainGrid[i][j][k];
+		boolean rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k].getTerrainType() == air,
+		leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k].getTerrainType() == air;
+		
+		return packTile(t.getTexColTop() + blendOffset(leftEmpty, rightEmpty), t.getTexRowTop() + 4);
+	}
+	
+	/**
+	 * Determine which tile of the horizontal texture sheet the top of the terrain below a cell uses
+	 * @return the tile's column and row, packed
+	 */
+	int topTile(int i, int j, int k)
+	{
+		int tile = tileCache.get(TileCache.TOP, i, j, k-1);
+		if (tile == TileCache.UNRESOLVED)
+		{
+			tile = resolveTopTile(i, j, k);
+			tileCache.set(TileCache.TOP, i, j, k-1, tile);
+		}
+		return tile;
+	}
+	
+	private int resolveTopTile(int i, int j, int k)
+	{
+		Terrain t = terrainGrid[i][j][k-1];
+		boolean topEmpty, bottomEmpty, rightEmpty, leftEmpty;
+		
+		if (t.isUnblendedHorizontal())
+		{
+			topEmpty = j + 1 >= terrainGrid[0].length || terrainGrid[i][j+1][k-1].getTerrainTop() != t.getTerrainTop();
+			bottomEmpty = j - 1 < 0 || terrainGrid[i][j-1][k-1].getTerrainTop() != t.getTerrainTop();
+			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k-1].getTerrainTop() != t.getTerrainTop();
+			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k-1].getTerrainTop() != t.getTerrainTop();
+		}
+		else
+		{
+			topEmpty = j + 1 >= terrainGrid[0].length || terrainGrid[i][j+1][k-1].getTerrainType() == air;
+			bottomEmpty = j - 1 < 0 || terrainGrid[i][j-1][k-1].getTerrainType() == air;
+			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k-1].getTerrainType() == air;
+			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k-1].getTerrainType() == air;
+		}
+		
+		return packTile(t.getTexColTop() + blendOffset(leftEmpty, rightEmpty), t.getTexRowTop() + blendOffset(topEmpty, bottomEmpty));
+	}
+	
+	/**
+	 * Determine which tile of the vertical texture sheet the hanging bottom of the terrain above a cell uses
+	 * @return the tile's column and row, packed
+	 */
+	int hangingTile(int i, int j, int k)
+	{
+		int tile = tileCache.get(TileCache.BOTTOM, i, j, k+1);
+		if (tile == TileCache.UNRESOLVED)
+		{
+			tile = resolveHangingTile(i, j, k);
+			tileCache.set(TileCache.BOTTOM, i, j, k+1, tile);
+		}
+		return tile;
+	}
+	
+	private int resolveHangingTile(int i, int j, int k)
+	{
+		Terrain t = terrainGrid[i][j][k+1];
+		boolean rightEmpty, leftEmpty;
+		
+		if (t.isUnblendedVertical())
+		{
+			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k+1].getTerrainType() != t.getTerrainType();
+			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k+1].getTerrainType() != t.getTerrainType();
+		}
+		else
+		{
+			rightEmpty = i + 1 >= terrainGrid.length || terrainGrid[i+1][j][k+1].getTerrainType() == air;
+			leftEmpty = i - 1 < 0 || terrainGrid[i-1][j][k+1].getTerrainType() == air;
+		}
+		
+		return packTile(t.getTexCol() + blendOffset(leftEmpty, rightEmpty), t.getTexRow() + 4);
+	}
+	
+	/**
+	 * Offset into a block of tiles based on which of two opposite sides are empty
+	 * @param firstEmpty left or top side is empty
+	 * @param secondEmpty right or bottom side is empty
+	 */
+	private static int blendOffset(boolean firstEmpty, boolean secondEmpty)
+	{
+		if (firstEmpty && secondEmpty)
+			return 3;
+		else if (firstEmpty)
+			return 0;
+		else if (secondEmpty)
+			return 2;
+		else
+			return 1;
+	}
+	
+	static int packTile(int col, int row)
+	{
+		return (col << 8) | row;
+	}
+	
+	static int tileCol(int tile)
+	{
+		return tile >> 8;
+	}
+	
+	static int tileRow(int tile)
+	{
+		return tile & 0xff;
+	}
+	
 	/**
 	 * Render textboxes, menus, and such
 	 */
 	public void renderOverlay()
 	{
-		if (isTextBoxActive())
+		renderer.setPhase(renderPhase.overlay);
+		if (frame.isTextBoxActive())
 		{
-			GL11.glColor3f(1.0f, 1.0f, 1.0f);
-			GL11.glEnable(GL11.GL_TEXTURE_2D);
-			textTexture.bind();
-			GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
-			getTextDisplay().renderText();
+			renderer.setColor(1.0f, 1.0f, 1.0f, 1.0f);
+			renderer.bindTexture(textTexture);
+			getTextDisplay().renderText(renderer, frame.getTextName(), frame.getTextRows());
 		}
 	}
 	
@@ -911,9 +1023,30 @@ public class World {
 	 * @param transparency how transparent the rendering is
 	 */
 	private void setLighting(boolean shadowed, float lightMod, float transparency)
+	{
+		computeLighting(shadowed, lightMod, lightingColor);
+		renderer.setColor(lightingColor[0], lightingColor[1], lightingColor[2], transparency);
+	}
+	
+	/**
+	 * Set the color sprites submitted to the sprite batch are drawn with, the same way setLighting would
+	 */
+	private void setSpriteLighting(boolean shadowed, float lightMod)
+	{
+		computeLighting(shadowed, lightMod, lightingColor);
+		spriteBatch.setColor(lightingColor[0], lightingColor[1], lightingColor[2], 1.0f);
+	}
+	
+	/**
+	 * Compute the color for rendering something depending on shadows, light sources, and time of day
+	 * @param shadowed true if in shadow
+	 * @param lightMod contributing amount from light sources
+	 * @param rgb receives the red, green, and blue components
+	 */
+	void computeLighting(boolean shadowed, float lightMod, float[] rgb)
 	{
 		float r, g, b;
-		switch (tod)
+		switch (frame.getTod())
 		{
 		case sunrise:
 			if (shadowed)
@@ -1027,7 +1160,9 @@ public class World {
 			b = Math.min(1, b + .8f * lightMod);
 		}
 		
-		GL11.glColor4f(r, g, b, transparency);
+		rgb[0] = r;
+		rgb[1] = g;
+		rgb[2] = b;
 	}
 	
 	/**
@@ -1040,6 +1175,7 @@ public class World {
 		
 		Position pos = newAgent.getPos();
 		agentGrid[pos.x][pos.y][pos.z] = newAgent;
+		refreshOpacity(pos.x, pos.y, pos.z);
 	}
 	
 	/**
@@ -1053,6 +1189,7 @@ public class World {
 		{
 			Position pos = newAgents.get(i).getPos();
 			agentGrid[pos.x][pos.y][pos.z] = newAgents.get(i);
+			refreshOpacity(pos.x, pos.y, pos.z);
 		}
 	}
 	
@@ -1065,6 +1202,7 @@ public class World {
 	{
 		agents.remove(agentGrid[x][y][z]);
 		agentGrid[x][y][z] = null;
+		refreshOpacity(x, y, z);
 	}
 	
 	public void addThing(Thing t, int x, int y, int z)
@@ -1072,10 +1210,12 @@ public class World {
 		if (thingGrid[x][y][z] == null)
 			thingGrid[x][y][z] = new ThingGridCell();
 		thingGrid[x][y][z].addThing(t);
+		sceneCache.cellChanged(x, y, z);
 		t.setPos(new Position(x, y, z));
 		things.add(t);
 		if (t.isLightSource())
 			lightSources.add(t);
+		refreshOpacity(x, y, z);
 	}
 	
 	public void removeThingsAt(int x, int y, int z)
@@ -1089,6 +1229,8 @@ public class World {
 					lightSources.remove(thingList.get(i));
 				things.remove(thingList.get(i));
 			}
+			sceneCache.cellChanged(x, y, z);
+			refreshOpacity(x, y, z);
 		}
 	}
 	
@@ -1112,6 +1254,10 @@ public class World {
 			if (thingGrid[newX][newY][newZ] == null)
 				thingGrid[newX][newY][newZ] = new ThingGridCell();
 			thingGrid[newX][newY][newZ].addThing(thing);
+			sceneCache.cellChanged(oldX, oldY, oldZ);
+			sceneCache.cellChanged(newX, newY, newZ);
+			refreshOpacity(oldX, oldY, oldZ);
+			refreshOpacity(newX, newY, newZ);
 		}
 	}
 	
@@ -1153,6 +1299,8 @@ public class World {
 			agent.setPos(new Position(newX, newY, newZ));
 			agentGrid[oldX][oldY][oldZ] = null;
 			agentGrid[newX][newY][newZ] = agent;
+			refreshOpacity(oldX, oldY, oldZ);
+			refreshOpacity(newX, newY, newZ);
 		}
 	}
 	
@@ -1282,14 +1430,82 @@ public class World {
 		return false;
 	}
 	
+	/**
+	 * Determine whether anything in a cell blocks light, read from the packed opacity grid
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 * @return true if an agent, thing, or terrain in the cell blocks light
+	 */
 	public boolean isLightBlocking(int x, int y, int z)
+	{
+		return opacity.isLightBlocking(x, y, z);
+	}
+	
+	/**
+	 * Determine whether anything in a cell blocks light by checking the agent, thing, and terrain grids
+	 */
+	private boolean computeLightBlocking(int x, int y, int z)
 	{
 		if (isOccupied(x, y, z) && !agentGrid[x][y][z].isTransparent())
 			return true;
 		else if (hasThing(x, y, z) && !thingGrid[x][y][z].isTransparent())
 			return true;
 		else
-			return !terrainGrid[x][y][z].isTransparent();
+			return terrainGrid[x][y][z] != null && !terrainGrid[x][y][z].isTransparent();
+	}
+	
+	/**
+	 * Determine whether anything in a cell blocks movement: an agent, a blocking thing, or blocking terrain
+	 */
+	boolean isCellBlocking(int x, int y, int z)
+	{
+		if (agentGrid[x][y][z] != null)
+			return true;
+		else if (hasThing(x, y, z) && thingGrid[x][y][z].isBlocking())
+			return true;
+		else
+			return terrainGrid[x][y][z] != null && terrainGrid[x][y][z].isBlocking();
+	}
+	
+	/**
+	 * Update the opacity grid and heightmap for a cell whose agents or things changed, and queue the change for
+	 * the lighting and shadows if its opacity actually changed
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 */
+	private void refreshOpacity(int x, int y, int z)
+	{
+		refreshOpacity(x, y, z, false);
+	}
+	
+	/**
+	 * Update the opacity grid and heightmap for a cell, and queue the change for the renderer if its opacity
+	 * changed or its terrain was replaced
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 * @param terrainChanged true if the cell's terrain was replaced
+	 */
+	private void refreshOpacity(int x, int y, int z, boolean terrainChanged)
+	{
+		boolean lightBlocking = computeLightBlocking(x, y, z);
+		boolean terrainBlocking = terrainGrid[x][y][z] != null && terrainGrid[x][y][z].isBlocking();
+		boolean terrainOpaque = terrainGrid[x][y][z] != null && !terrainGrid[x][y][z].isTransparent();
+		boolean changed = opacity.setLightBlocking(x, y, z, lightBlocking);
+		if (opacity.setTerrainBlocking(x, y, z, terrainBlocking))
+			changed = true;
+		if (opacity.setTerrainOpaque(x, y, z, terrainOpaque))
+			changed = true;
+		if (changed || terrainChanged)
+			cellChanges.add(((long)opacity.index(x, y, z) << 4) | (lightBlocking ? OCCLUDER_LIGHT_BLOCKING : 0)
+					| (terrainBlocking ? OCCLUDER_TERRAIN_BLOCKING : 0) | (terrainOpaque ? OCCLUDER_TERRAIN_OPAQUE : 0)
+					| (terrainChanged ? TERRAIN_CHANGED : 0));
+		heightMap.updateCell(x, y, z);
 	}
 	
 	/**
@@ -1424,6 +1640,36 @@ public class World {
 				}
 			}
 		}
+		for (int i = 0; i < terrainGrid.length; i ++)
+		{
+			for (int j = 0; j < terrainGrid[0].length; j ++)
+			{
+				for (int k = 0; k < terrainGrid[0][0].length; k ++)
+				{
+					opacity.setLightBlocking(i, j, k, computeLightBlocking(i, j, k));
+					opacity.setTerrainOpaque(i, j, k, terrainGrid[i][j][k] != null && !terrainGrid[i][j][k].isTransparent());
+					opacity.setTerrainBlocking(i, j, k, terrainGrid[i][j][k] != null && terrainGrid[i][j][k].isBlocking());
+				}
+			}
+		}
+		heightMap.rebuild();
+		replacedOccluders.add(new OpacityGrid(opacity));
+		cellChanges.add(TERRAIN_REPLACED);
+	}
+	
+	/**
+	 * Replace the terrain in a single grid cell.  The tiles and meshes drawn from it are updated by the renderer
+	 * before it draws the next frame.
+	 * 
+	 * @param x grid location
+	 * @param y grid location
+	 * @param z grid location
+	 * @param t the new terrain
+	 */
+	public void setTerrainAt(int x, int y, int z, Terrain t)
+	{
+		terrainGrid[x][y][z] = t;
+		refreshOpacity(x, y, z, true);
 	}
 		
 	/**
@@ -1444,6 +1690,62 @@ public class World {
 		player = hero;
 	}
 
+	/**
+	 * Set the backend the world is drawn through.  Terrain vertex buffers are kept, so a new renderer has to share
+	 * them with the old one, as a recording renderer does with its target.
+	 * @param renderer the new renderer
+	 */
+	public void setRenderer(Renderer renderer) {
+		this.renderer = renderer;
+		spriteBatch.setRenderer(renderer);
+	}
+	
+	public Renderer getRenderer() {
+		return renderer;
+	}
+	
+	public void setCachedRendering(boolean cachedRendering) {
+		this.cachedRendering = cachedRendering;
+		sceneCache.invalidate();
+	}
+	
+	public boolean isCachedRendering() {
+		return cachedRendering;
+	}
+	
+	public void setOcclusionCulling(boolean occlusionCulling) {
+		this.occlusionCulling = occlusionCulling;
+	}
+	
+	public boolean isOcclusionCulling() {
+		return occlusionCulling;
+	}
+	
+	public SceneCache getSceneCache() {
+		return sceneCache;
+	}
+	
+	/**
+	 * Set how far between the last two simulation ticks the next frame is drawn
+	 * @param alpha fraction of a tick elapsed since the last one, from 0 to 1
+	 */
+	public void setInterpolation(float alpha) {
+		this.interpolation = Math.max(0.0f, Math.min(1.0f, alpha));
+	}
+	
+	public float getInterpolation() {
+		return interpolation;
+	}
+	
+	/**
+	 * Interpolate each frame by how long ago its snapshot was published instead of by setInterpolation, for when
+	 * the simulation runs on another thread
+	 * @param tickNanos length of a tick in nanoseconds, 0 to go back to setInterpolation
+	 */
+	public void setInterpolationClock(long tickNanos) {
+		this.interpolationTickNanos = tickNanos;
+	}
+	
 	public void setTod(timeOfDay tod) {
 		this.tod = tod;
 	}
@@ -1492,6 +1794,14 @@ public class World {
 		return textDisplay;
 	}
 
+	public HeightMap getHeightMap() {
+		return heightMap;
+	}
+
+	public LightEngine getLightEngine() {
+		return lightEngine;
+	}
+
 	public controlState getCs() {
 		return cs;
 	}
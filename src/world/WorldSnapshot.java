@@ -0,0 +1,242 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import things.Thing;
+import world.World.timeOfDay;
+import entities.AgentView;
+
+/**
+ * The state of the world that changes from tick to tick, captured by the simulation at the end of a tick for the
+ * renderer to draw: the camera, time of day, text box, agent sprites, thing animation frames, and light sources.
+ * A snapshot never changes once it has been published, so the renderer can draw the latest one while the simulation
+ * works on the next tick, without either waiting on the other.
+ * 
+ * Terrain and the placement of things still come from the world itself.  Those change rarely, and the grids
+ * holding them are safe to read while they change.  Changes to what blocks light are passed to the renderer
+ * separately, see World.updateLightModGrid.
+ */
+public final class WorldSnapshot {
+	private final long tick;	//number of ticks run when the snapshot was taken
+	private final long time;	//System.nanoTime() when the snapshot was taken
+	private final float[] displayCenter = new float[2];	//camera at the end of the tick
+	private final float[] tickDisplayCenter = new float[2];	//camera at the start of the tick
+	private final timeOfDay tod;
+	private final int heightMax;	//highest layer to render
+	
+	private final boolean textBoxActive;
+	private final String textName;	//name of the speaking character
+	private final String[] textRows;	//rows of text shown so far in the text box
+	
+	private final int sizeY;
+	private final int sizeZ;
+	private final int[] agentCells;	//packed cells with agent sprites, sorted
+	private final AgentView[] agentViews;	//sprite drawn in each of agentCells
+	private final int[] animatedCells;	//packed cells with animated things, sorted
+	private final IdentityHashMap<Thing, Integer> frames;	//animation frames that aren't 0
+	private final LightView[] lights;	//in the world's light order
+	private final LightView[] antiLights;
+	
+	/**
+	 * Capture the world, must be called from the thread running the simulation
+	 * @param world the world to capture
+	 * @param tick number of ticks run so far
+	 * @param heightMax highest layer to render
+	 */
+	WorldSnapshot(World world, long tick, int heightMax)
+	{
+		this.tick = tick;
+		this.time = System.nanoTime();
+		displayCenter[0] = world.displayCenter[0];
+		displayCenter[1] = world.displayCenter[1];
+		if (world.tickDisplayCenter != null)
+		{
+			tickDisplayCenter[0] = world.tickDisplayCenter[0];
+			tickDisplayCenter[1] = world.tickDisplayCenter[1];
+		}
+		else
+		{
+			tickDisplayCenter[0] = displayCenter[0];
+			tickDisplayCenter[1] = displayCenter[1];
+		}
+		tod = world.getTod();
+		this.heightMax = heightMax;
+		
+		textBoxActive = world.isTextBoxActive();
+		textName = textBoxActive ? world.getTextDisplay().getName() : null;
+		textRows = textBoxActive ? world.getTextDisplay().getVisibleRows() : null;
+		
+		sizeY = world.terrainGrid[0].length;
+		sizeZ = world.terrainGrid[0][0].length;
+		
+		//agents, sorted by cell so the renderer can look them up without building anything
+		ArrayList<AgentView> views = new ArrayList<AgentView>(world.agents.size());
+		for (int i = 0; i < world.agents.size(); i ++)
+		{
+			AgentView view = world.agents.get(i).captureView();
+			if (view != null)
+				views.add(view);
+		}
+		long[] sorted = new long[views.size()];
+		for (int n = 0; n < sorted.length; n ++)
+		{
+			AgentView view = views.get(n);
+			sorted[n] = ((long)pack(view.getX(), view.getY(), view.getZ()) << 32) | n;
+		}
+		Arrays.sort(sorted);
+		agentCells = new int[sorted.length];
+		agentViews = new AgentView[sorted.length];
+		for (int n = 0; n < sorted.length; n ++)
+		{
+			agentCells[n] = (int)(sorted[n] >> 32);
+			agentViews[n] = views.get((int)sorted[n]);
+		}
+		
+		//animated things and the frames of anything not showing its first
+		frames = new IdentityHashMap<Thing, Integer>();
+		int[] cells = new int[16];
+		int cellCount = 0;
+		for (int i = 0; i < world.things.size(); i ++)
+		{
+			Thing t = world.things.get(i);
+			int frame = t.getFrame();
+			if (frame != 0)
+				frames.put(t, frame);
+			if (t.isAnimated())
+			{
+				if (cellCount == cells.length)
+					cells = Arrays.copyOf(cells, cells.length * 2);
+				Position pos = t.getPos();
+				cells[cellCount ++] = pack(pos.x, pos.y, pos.z);
+			}
+		}
+		animatedCells = Arrays.copyOf(cells, cellCount);
+		Arrays.sort(animatedCells);
+		
+		lights = captureLights(world.lightSources);
+		antiLights = captureLights(world.antiLightSources);
+	}
+	
+	private static LightView[] captureLights(ArrayList<Thing> sources)
+	{
+		LightView[] views = new LightView[sources.size()];
+		for (int n = 0; n < views.length; n ++)
+		{
+			views[n] = new LightView(sources.get(n));
+		}
+		return views;
+	}
+	
+	private int pack(int x, int y, int z)
+	{
+		return (x * sizeY + y) * sizeZ + z;
+	}
+	
+	/**
+	 * Get the sprite of the agent in a cell
+	 * @return the agent's sprite, or null if no agent is drawn there
+	 */
+	public AgentView getAgentAt(int x, int y, int z)
+	{
+		int n = Arrays.binarySearch(agentCells, pack(x, y, z));
+		return n >= 0 ? agentViews[n] : null;
+	}
+	
+	/**
+	 * @return true if an agent is drawn in the cell
+	 */
+	public boolean hasAgentAt(int x, int y, int z)
+	{
+		return Arrays.binarySearch(agentCells, pack(x, y, z)) >= 0;
+	}
+	
+	/**
+	 * @return true if the cell has a thing that looks different from one tick to the next
+	 */
+	public boolean hasAnimatedThingAt(int x, int y, int z)
+	{
+		return Arrays.binarySearch(animatedCells, pack(x, y, z)) >= 0;
+	}
+	
+	/**
+	 * Get the animation frame a thing was showing
+	 * @param t the thing
+	 * @return the frame, as returned by the thing's getFrame()
+	 */
+	public int getFrame(Thing t)
+	{
+		Integer frame = frames.get(t);
+		return frame == null ? 0 : frame;
+	}
+	
+	/**
+	 * @return the light sources, which must not be changed
+	 */
+	public LightView[] getLights() {
+		return lights;
+	}
+	
+	/**
+	 * @return the anti light sources, which must not be changed
+	 */
+	public LightView[] getAntiLights() {
+		return antiLights;
+	}
+	
+	/**
+	 * @return the number of agents drawn
+	 */
+	public int getAgentCount()
+	{
+		return agentViews.length;
+	}
+	
+	public long getTick() {
+		return tick;
+	}
+	
+	public long getTime() {
+		return time;
+	}
+	
+	public float getDisplayCenterX() {
+		return displayCenter[0];
+	}
+	
+	public float getDisplayCenterY() {
+		return displayCenter[1];
+	}
+	
+	public float getTickDisplayCenterX() {
+		return tickDisplayCenter[0];
+	}
+	
+	public float getTickDisplayCenterY() {
+		return tickDisplayCenter[1];
+	}
+	
+	public timeOfDay getTod() {
+		return tod;
+	}
+	
+	public int getHeightMax() {
+		return heightMax;
+	}
+	
+	public boolean isTextBoxActive() {
+		return textBoxActive;
+	}
+	
+	public String getTextName() {
+		return textName;
+	}
+	
+	/**
+	 * @return the rows of text shown so far, which must not be changed
+	 */
+	public String[] getTextRows() {
+		return textRows;
+	}
+}